@@ -15,33 +15,344 @@
  */
 package com.kinglcc.spring.jms;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jms.connection.ConnectionFactoryUtils;
 import org.springframework.jms.core.JmsTemplate;
 import org.springframework.jms.core.MessagePostProcessor;
+import org.springframework.jms.core.SessionCallback;
+import org.springframework.jms.support.JmsUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import com.kinglcc.spring.jms.core.balance.BrokerBalancer;
+import com.kinglcc.spring.jms.core.claimcheck.ClaimCheck;
+import com.kinglcc.spring.jms.core.delay.JmsDelayQueue;
+import com.kinglcc.spring.jms.core.listener.LatencyTracker;
+import com.kinglcc.spring.jms.core.listener.LocalTopicDispatcher;
+import com.kinglcc.spring.jms.core.listener.LocalTopicMessage;
+import com.kinglcc.spring.jms.core.reply.JmsReplyQueue;
+import com.kinglcc.spring.jms.core.spool.JmsSpool;
 
 @Service
 public class JmsService {
 
     @Autowired
     private JmsTemplate jmsTemplate;
+    @Autowired(required = false)
+    private LocalTopicDispatcher localTopicDispatcher;
+    @Autowired(required = false)
+    private JmsSpool jmsSpool;
+    @Autowired(required = false)
+    private JmsReplyQueue jmsReplyQueue;
+    @Autowired(required = false)
+    private BrokerBalancer brokerBalancer;
+    @Value("${jms.message.sendTimestamp:false}")
+    private boolean sendTimestamp;
+
+    private JmsDelayQueue jmsDelayQueue;
+
+    private final ConcurrentMap<JmsTemplate, JmsTemplate> transactedTemplates =
+            new ConcurrentHashMap<JmsTemplate, JmsTemplate>();
+
+    @Autowired(required = false)
+    public void setJmsDelayQueue(JmsDelayQueue jmsDelayQueue) {
+        this.jmsDelayQueue = jmsDelayQueue;
+        jmsDelayQueue.setSender(new JmsDelayQueue.Sender() {
+
+            @Override
+            public void send(String destinationName, String messageGroup, Object payload) {
+                JmsService.this.send(destinationName, messageGroup, payload);
+            }
+        });
+    }
 
     public <T> void send(final String destinaionName, T message) {
+        if (null != jmsSpool || null != brokerBalancer || sendTimestamp || isLocalDelivery(destinaionName)) {
+            send(destinaionName, null, message);
+            return;
+        }
         jmsTemplate.convertAndSend(destinaionName, message);
     }
 
-    public <T> void send(final String destinaionName, final String messageGroup, T message) {
-        jmsTemplate.convertAndSend(destinaionName, message, new MessagePostProcessor() {
+    public <T> void send(final String destinaionName, final String messageGroup, final T message) {
+        String localOrigin = getLocalOrigin(destinaionName);
+        if (null != jmsSpool) {
+            jmsSpool.send(destinaionName, messageGroup, localOrigin, message);
+            return;
+        }
+        if (null != localOrigin) {
+            sendToAll(Collections.singletonList(destinaionName), messageGroup, message, false);
+            return;
+        }
+        final SendPostProcessor postProcessor = new SendPostProcessor(messageGroup);
+        if (null == brokerBalancer) {
+            jmsTemplate.convertAndSend(destinaionName, message, postProcessor);
+        } else {
+            brokerBalancer.execute(messageGroup, new BrokerBalancer.BrokerCallback<Object>() {
+
+                @Override
+                public Object doWithTemplate(JmsTemplate template) {
+                    template.convertAndSend(destinaionName, message, postProcessor);
+                    return null;
+                }
+            });
+        }
+    }
+
+    public <T> void sendToAll(Collection<String> destinationNames, T message) {
+        sendToAll(destinationNames, null, message, false);
+    }
+
+    /**
+     * Send the message to all the destinations, the message is converted only once
+     * and sent by the producers of one session, the local listeners get their copies
+     * after the send is committed. The claim check of an oversized message is shared
+     * by the destinations, so it's not released by the listeners but expired by the store
+     *
+     * @param destinationNames the destinations
+     * @param messageGroup the message group, nullable
+     * @param message the message
+     * @param transacted send in one local transaction, all or none of the destinations get the message
+     */
+    public <T> void sendToAll(final Collection<String> destinationNames, final String messageGroup, final T message,
+            final boolean transacted) {
+        String origin = null;
+        for (String destinationName : destinationNames) {
+            String localOrigin = getLocalOrigin(destinationName);
+            if (null != localOrigin) {
+                origin = localOrigin;
+            }
+        }
+        if (null != jmsSpool) {
+            for (String destinationName : destinationNames) {
+                jmsSpool.send(destinationName, messageGroup, origin, message);
+            }
+            return;
+        }
+        final String localOrigin = origin;
+        Map<String, LocalTopicMessage> localMessages;
+        if (null == brokerBalancer) {
+            localMessages = sendToAll(jmsTemplate, destinationNames, messageGroup, localOrigin, message, transacted);
+        } else {
+            localMessages = brokerBalancer.execute(messageGroup,
+                    new BrokerBalancer.BrokerCallback<Map<String, LocalTopicMessage>>() {
+
+                        @Override
+                        public Map<String, LocalTopicMessage> doWithTemplate(JmsTemplate template) {
+                            return sendToAll(template, destinationNames, messageGroup, localOrigin, message,
+                                    transacted);
+                        }
+                    });
+        }
+        for (Map.Entry<String, LocalTopicMessage> entry : localMessages.entrySet()) {
+            deliverLocally(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private Map<String, LocalTopicMessage> sendToAll(JmsTemplate baseTemplate,
+            final Collection<String> destinationNames, final String messageGroup, final String localOrigin,
+            final Object message, boolean transacted) {
+        final JmsTemplate template = transacted ? getTransactedTemplate(baseTemplate) : baseTemplate;
+        return template.execute(new SessionCallback<Map<String, LocalTopicMessage>>() {
 
             @Override
-            public Message postProcessMessage(Message message) throws JMSException {
-                message.setJMSType(messageGroup);
-                return message;
+            public Map<String, LocalTopicMessage> doInJms(Session session) throws JMSException {
+                boolean locallyTransacted = session.getTransacted()
+                        && !ConnectionFactoryUtils.isSessionTransactional(session, template.getConnectionFactory());
+                try {
+                    Map<String, LocalTopicMessage> localMessages =
+                            sendToAll(template, session, destinationNames, messageGroup, localOrigin, message);
+                    if (locallyTransacted) {
+                        session.commit();
+                    }
+                    return localMessages;
+                } catch (JMSException | RuntimeException ex) {
+                    if (locallyTransacted) {
+                        JmsUtils.rollbackIfNecessary(session);
+                    }
+                    throw ex;
+                }
+            }
+        }, false);
+    }
+
+    private JmsTemplate getTransactedTemplate(JmsTemplate baseTemplate) {
+        if (baseTemplate.isSessionTransacted()) {
+            return baseTemplate;
+        }
+        JmsTemplate transactedTemplate = transactedTemplates.get(baseTemplate);
+        if (null == transactedTemplate) {
+            transactedTemplate = new JmsTemplate(baseTemplate.getConnectionFactory());
+            transactedTemplate.setDestinationResolver(baseTemplate.getDestinationResolver());
+            transactedTemplate.setMessageConverter(baseTemplate.getMessageConverter());
+            transactedTemplate.setPubSubDomain(baseTemplate.isPubSubDomain());
+            transactedTemplate.setExplicitQosEnabled(baseTemplate.isExplicitQosEnabled());
+            transactedTemplate.setDeliveryMode(baseTemplate.getDeliveryMode());
+            transactedTemplate.setPriority(baseTemplate.getPriority());
+            transactedTemplate.setTimeToLive(baseTemplate.getTimeToLive());
+            transactedTemplate.setSessionTransacted(true);
+            transactedTemplates.put(baseTemplate, transactedTemplate);
+        }
+        return transactedTemplate;
+    }
+
+    /**
+     * Send the message to the destinations by the converter, the resolver and the QoS of the template,
+     * the local listeners of each destination get a copy taken right after its send
+     *
+     * @return the copies of the sent message by the destinations of the local listeners
+     */
+    private Map<String, LocalTopicMessage> sendToAll(JmsTemplate template, Session session,
+            Collection<String> destinationNames, String messageGroup, String localOrigin, Object payload)
+            throws JMSException {
+        Message message = template.getMessageConverter().toMessage(payload, session);
+        if (destinationNames.size() > 1 && message.propertyExists(ClaimCheck.CLAIM_CHECK_PROP)) {
+            message.setBooleanProperty(ClaimCheck.SHARED_PROP, true);
+        }
+        if (null != messageGroup) {
+            message.setJMSType(messageGroup);
+        }
+        if (null != localOrigin) {
+            message.setStringProperty(LocalTopicDispatcher.LOCAL_ORIGIN_PROP, localOrigin);
+        }
+        if (sendTimestamp) {
+            message.setLongProperty(LatencyTracker.SEND_TIMESTAMP_PROP, LatencyTracker.currentTimeMicros());
+        }
+        Map<String, LocalTopicMessage> localMessages = new LinkedHashMap<String, LocalTopicMessage>();
+        MessageProducer producer = session.createProducer(null);
+        try {
+            for (String destinationName : destinationNames) {
+                Destination destination = template.getDestinationResolver().resolveDestinationName(
+                        session, destinationName, template.isPubSubDomain());
+                if (template.isExplicitQosEnabled()) {
+                    producer.send(destination, message, template.getDeliveryMode(), template.getPriority(),
+                            template.getTimeToLive());
+                } else {
+                    producer.send(destination, message);
+                }
+                if (null != localOrigin && isLocalDelivery(destinationName)) {
+                    localMessages.put(destinationName, localTopicDispatcher.copyOf(message, payload));
+                }
+            }
+        } finally {
+            JmsUtils.closeMessageProducer(producer);
+        }
+        return localMessages;
+    }
+
+    public <T> void sendDelayed(String destinationName, T message, long delay, TimeUnit unit) {
+        sendAt(destinationName, null, message, System.currentTimeMillis() + unit.toMillis(delay));
+    }
+
+    public <T> void sendAt(String destinationName, T message, Date deliveryTime) {
+        sendAt(destinationName, null, message, deliveryTime.getTime());
+    }
+
+    /**
+     * Send the message at the delivery time, the message is kept by the {@link JmsDelayQueue} until then
+     *
+     * @param destinationName the destination
+     * @param messageGroup the message group, nullable
+     * @param message the message
+     * @param deliveryTime the delivery time in milliseconds
+     */
+    public <T> void sendAt(String destinationName, String messageGroup, T message, long deliveryTime) {
+        if (null == jmsDelayQueue) {
+            throw new JmsException("The delayed send is disabled, enable it by jms.message.delayedSend=true");
+        }
+        jmsDelayQueue.schedule(destinationName, messageGroup, message, deliveryTime);
+    }
+
+    /**
+     * Send the request and wait for the reply over the reply queue of the node
+     *
+     * @param destinationName the destination of the request
+     * @param message the request
+     * @param responseType the type of the reply
+     * @param timeout the timeout in milliseconds
+     * @return the reply
+     */
+    public <T> T request(String destinationName, Object message, Class<T> responseType, long timeout) {
+        return getReplyQueue().request(destinationName, message, responseType, timeout);
+    }
+
+    public <T> ListenableFuture<T> requestAsync(String destinationName, Object message, Class<T> responseType,
+            long timeout) {
+        return getReplyQueue().requestAsync(destinationName, message, responseType, timeout);
+    }
+
+    private JmsReplyQueue getReplyQueue() {
+        if (null == jmsReplyQueue) {
+            throw new JmsException("The request/reply is disabled, enable it by jms.message.requestReply=true");
+        }
+        return jmsReplyQueue;
+    }
+
+    private String getLocalOrigin(String destinationName) {
+        return isLocalDelivery(destinationName) ? localTopicDispatcher.getNodeId() : null;
+    }
+
+    /**
+     * Deliver the copy of the sent message locally after the transaction of the session is committed if any,
+     * otherwise the message is already sent
+     */
+    private void deliverLocally(final String destinationName, final LocalTopicMessage sentMessage) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            localTopicDispatcher.deliver(destinationName, sentMessage);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+            @Override
+            public void afterCommit() {
+                localTopicDispatcher.deliver(destinationName, sentMessage);
             }
         });
     }
 
+    private boolean isLocalDelivery(String destinationName) {
+        return null != localTopicDispatcher && localTopicDispatcher.hasListeners(destinationName);
+    }
+
+    /**
+     * Set the headers of the sent message
+     */
+    private class SendPostProcessor implements MessagePostProcessor {
+
+        private final String messageGroup;
+
+        SendPostProcessor(String messageGroup) {
+            this.messageGroup = messageGroup;
+        }
+
+        @Override
+        public Message postProcessMessage(Message message) throws JMSException {
+            if (null != messageGroup) {
+                message.setJMSType(messageGroup);
+            }
+            if (sendTimestamp) {
+                message.setLongProperty(LatencyTracker.SEND_TIMESTAMP_PROP, LatencyTracker.currentTimeMicros());
+            }
+            return message;
+        }
+    }
+
 }
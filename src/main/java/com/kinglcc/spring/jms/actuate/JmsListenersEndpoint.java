@@ -0,0 +1,48 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.actuate;
+
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+
+import com.kinglcc.spring.jms.core.listener.JmsListenerManager;
+
+/**
+ * JmsListenersEndpoint
+ * <pre>
+ * The actuator endpoint of the live stats of the jms listener containers.
+ * The containers are managed by the JMX operations of {@link JmsListenerManager}.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月23日 上午11:20:05
+ */
+public class JmsListenersEndpoint extends AbstractEndpoint<Map<String, Map<String, Object>>> {
+
+    private final JmsListenerManager jmsListenerManager;
+
+    public JmsListenersEndpoint(JmsListenerManager jmsListenerManager) {
+        super("jmsListeners");
+        this.jmsListenerManager = jmsListenerManager;
+    }
+
+    @Override
+    public Map<String, Map<String, Object>> invoke() {
+        return jmsListenerManager.getContainers();
+    }
+
+}
@@ -17,6 +17,8 @@ package com.kinglcc.spring.jms.config;
 
 import javax.jms.ConnectionFactory;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
@@ -34,7 +36,12 @@ import org.springframework.jms.support.destination.DestinationResolver;
 import org.springframework.transaction.jta.JtaTransactionManager;
 
 import com.kinglcc.spring.jms.core.ClientIdGenerator;
+import com.kinglcc.spring.jms.core.ConnectionSharding;
+import com.kinglcc.spring.jms.core.claimcheck.ClaimCheck;
+import com.kinglcc.spring.jms.core.lease.ClientIdLeaseKeeper;
 import com.kinglcc.spring.jms.core.listener.DynamicJmsListenerContainerFactory;
+import com.kinglcc.spring.jms.core.listener.ListenerExecutorResolver;
+import com.kinglcc.spring.jms.core.listener.RateLimiterRegistry;
 
 /**
  * JmsAutoConfiguration
@@ -48,6 +55,8 @@ import com.kinglcc.spring.jms.core.listener.DynamicJmsListenerContainerFactory;
 @AutoConfigureAfter(JmsAutoConfiguration.class)
 public class JmsAnnotationAtuoConfiguration {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(JmsAnnotationAtuoConfiguration.class);
+
     @Autowired(required = false)
     private DestinationResolver destinationResolver;
     @Autowired(required = false)
@@ -55,6 +64,12 @@ public class JmsAnnotationAtuoConfiguration {
     private MessageConverter messageConverter;
     @Autowired(required = false)
     private JtaTransactionManager transactionManager;
+    @Autowired(required = false)
+    private ClaimCheck claimCheck;
+    @Autowired(required = false)
+    private ClientIdLeaseKeeper clientIdLeaseKeeper;
+    @Autowired(required = false)
+    private ConnectionSharding connectionSharding;
 
     @Autowired
     private JmsProperties properties;
@@ -65,6 +80,10 @@ public class JmsAnnotationAtuoConfiguration {
     private String applicationName;
     @Value("${server.port}")
     private String applicationPort;
+    @Value("${jms.message.virtualThreads:false}")
+    private boolean virtualThreads;
+    @Value("${jms.message.retryDelayProperty:AMQ_SCHEDULED_DELAY}")
+    private String retryDelayProperty;
 
     @Bean
     @ConditionalOnMissingBean(name = "jmsListenerContainerFactory")
@@ -85,13 +104,28 @@ public class JmsAnnotationAtuoConfiguration {
         }
         ClientIdGenerator clientIdGenerator = new ClientIdGenerator(clientId, applicationName, applicationPort);
         factory.setClientIdGenerator(clientIdGenerator);
+        ListenerExecutorResolver executorResolver = new ListenerExecutorResolver();
+        executorResolver.setVirtualThreads(virtualThreads);
+        factory.setExecutorResolver(executorResolver);
+        factory.setRetryDelayProperty(retryDelayProperty);
+        factory.setClaimCheck(claimCheck);
+        factory.setClientIdLeaseKeeper(clientIdLeaseKeeper);
+        factory.setRateLimiterRegistry(rateLimiterRegistry());
+        factory.setConnectionSharding(getConnectionSharding("listener containers"));
         return factory;
     }
 
+    @Bean
+    public RateLimiterRegistry rateLimiterRegistry() {
+        return new RateLimiterRegistry();
+    }
+
     @Bean
     @ConditionalOnMissingBean
     public JmsTemplate jmsTemplate(ConnectionFactory connectionFactory) {
-        JmsTemplate jmsTemplate = new JmsTemplate(connectionFactory);
+        ConnectionSharding sharding = getConnectionSharding("template");
+        JmsTemplate jmsTemplate = new JmsTemplate(null != sharding
+                ? sharding.getConnectionFactory() : connectionFactory);
         jmsTemplate.setPubSubDomain(this.properties.isPubSubDomain());
         if (this.destinationResolver != null) {
             jmsTemplate.setDestinationResolver(this.destinationResolver);
@@ -100,4 +134,17 @@ public class JmsAnnotationAtuoConfiguration {
         return jmsTemplate;
     }
 
+    /**
+     * The sessions of the shared connections of the shards are not enlisted in the JTA transactions,
+     * so the connections are not sharded with a transaction manager
+     */
+    private ConnectionSharding getConnectionSharding(String user) {
+        if (null != connectionSharding && null != transactionManager) {
+            LOGGER.warn("The connection sharding of the {} is disabled by the transaction manager {}",
+                    user, transactionManager.getClass().getSimpleName());
+            return null;
+        }
+        return connectionSharding;
+    }
+
 }
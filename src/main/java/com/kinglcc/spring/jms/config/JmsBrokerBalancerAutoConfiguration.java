@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.config;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.jms.ConnectionFactory;
+
+import org.apache.commons.lang.StringUtils;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.util.ClassUtils;
+
+import com.kinglcc.spring.jms.JmsException;
+import com.kinglcc.spring.jms.core.balance.BrokerBalancer;
+
+/**
+ * JmsBrokerBalancerAutoConfiguration
+ * <pre>
+ * Balance the sends of {@link com.kinglcc.spring.jms.JmsService} over the brokers of jms.message.brokers,
+ * the comma separated broker urls, each connection factory is created by the url constructor of
+ * jms.message.brokerConnectionFactoryClass
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月28日 下午5:30:44
+ */
+@Configuration
+@ConditionalOnExpression("!'${jms.message.brokers:}'.isEmpty()")
+@AutoConfigureAfter(JmsAnnotationAtuoConfiguration.class)
+public class JmsBrokerBalancerAutoConfiguration {
+
+    @Value("${jms.message.brokers:}")
+    private String brokers;
+    @Value("${jms.message.brokerConnectionFactoryClass:org.apache.activemq.ActiveMQConnectionFactory}")
+    private String connectionFactoryClass;
+    @Value("${jms.message.brokerFailureThreshold:2}")
+    private int failureThreshold;
+    @Value("${jms.message.brokerSkipInterval:5000}")
+    private long skipInterval;
+
+    @Bean
+    @ConditionalOnMissingBean
+    public BrokerBalancer brokerBalancer(JmsTemplate jmsTemplate) {
+        Map<String, ConnectionFactory> connectionFactories = new LinkedHashMap<String, ConnectionFactory>();
+        for (String broker : StringUtils.split(brokers, ',')) {
+            String brokerUrl = broker.trim();
+            connectionFactories.put(brokerUrl, createConnectionFactory(brokerUrl));
+        }
+        BrokerBalancer brokerBalancer = new BrokerBalancer(jmsTemplate, connectionFactories);
+        brokerBalancer.setFailureThreshold(failureThreshold);
+        brokerBalancer.setSkipInterval(skipInterval);
+        return brokerBalancer;
+    }
+
+    private ConnectionFactory createConnectionFactory(String brokerUrl) {
+        try {
+            Class<?> clazz = ClassUtils.forName(connectionFactoryClass, getClass().getClassLoader());
+            return (ConnectionFactory) BeanUtils.instantiateClass(clazz.getConstructor(String.class), brokerUrl);
+        } catch (ClassNotFoundException | NoSuchMethodException | LinkageError ex) {
+            throw new JmsException("Could not create the connection factory " + connectionFactoryClass
+                    + " of the broker " + brokerUrl, ex);
+        }
+    }
+
+}
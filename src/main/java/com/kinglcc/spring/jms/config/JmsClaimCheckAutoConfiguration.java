@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.config;
+
+import java.io.File;
+
+import org.apache.commons.lang.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.kinglcc.spring.jms.core.claimcheck.BlobStore;
+import com.kinglcc.spring.jms.core.claimcheck.ClaimCheck;
+import com.kinglcc.spring.jms.core.claimcheck.FileSystemBlobStore;
+
+/**
+ * JmsClaimCheckAutoConfiguration
+ * <pre>
+ * The claim check of the oversized message bodies, enabled by jms.message.claimCheck=true.
+ * The default {@link BlobStore} is {@link FileSystemBlobStore}.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月21日 下午2:15:40
+ */
+@Configuration
+@ConditionalOnExpression("${jms.message.claimCheck:false}")
+public class JmsClaimCheckAutoConfiguration {
+
+    @Value("${jms.message.claimCheckThreshold:1048576}")
+    private int threshold;
+    @Value("${jms.message.claimCheckDirectory:}")
+    private String directory;
+    @Value("${jms.message.claimCheckMapped:false}")
+    private boolean memoryMapped;
+    @Value("${jms.message.claimCheckExpiration:604800000}")
+    private long expiration;
+
+    @Bean
+    @ConditionalOnMissingBean
+    public BlobStore blobStore() {
+        FileSystemBlobStore blobStore = new FileSystemBlobStore();
+        if (StringUtils.isNotBlank(directory)) {
+            blobStore.setDirectory(new File(directory));
+        }
+        blobStore.setMemoryMapped(memoryMapped);
+        blobStore.setExpiration(expiration);
+        return blobStore;
+    }
+
+    @Bean
+    public ClaimCheck claimCheck(BlobStore blobStore) {
+        ClaimCheck claimCheck = new ClaimCheck(blobStore);
+        claimCheck.setThreshold(threshold);
+        return claimCheck;
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.AutoConfigureBefore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import com.kinglcc.spring.jms.core.lease.ClientIdLeaseKeeper;
+import com.kinglcc.spring.jms.core.lease.ClientIdLeaseManager;
+import com.kinglcc.spring.jms.core.lease.InMemoryClientIdLeaseManager;
+import com.kinglcc.spring.jms.core.lease.RedisClientIdLeaseManager;
+
+/**
+ * JmsClientIdLeaseAutoConfiguration
+ * <pre>
+ * The client id leases of the durable subscribers, enabled by jms.message.clientIdLease=true.
+ * The leases are stored in redis by default, or in memory for a single node
+ * by jms.message.clientIdLeaseStore=memory
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月23日 下午3:40:22
+ */
+@Configuration
+@ConditionalOnExpression("${jms.message.clientIdLease:false}")
+@AutoConfigureBefore(JmsAnnotationAtuoConfiguration.class)
+public class JmsClientIdLeaseAutoConfiguration {
+
+    @Value("${jms.message.clientIdLeaseTime:10000}")
+    private long leaseTime;
+    @Value("${jms.message.clientIdHeartbeatInterval:3000}")
+    private long heartbeatInterval;
+
+    @Bean
+    @ConditionalOnMissingBean
+    public ClientIdLeaseKeeper clientIdLeaseKeeper(ClientIdLeaseManager clientIdLeaseManager) {
+        ClientIdLeaseKeeper keeper = new ClientIdLeaseKeeper(clientIdLeaseManager);
+        keeper.setLeaseTime(leaseTime);
+        keeper.setHeartbeatInterval(heartbeatInterval);
+        return keeper;
+    }
+
+    @Configuration
+    @ConditionalOnExpression("'${jms.message.clientIdLeaseStore:redis}' == 'redis'")
+    protected static class RedisClientIdLeaseConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean
+        public ClientIdLeaseManager clientIdLeaseManager(StringRedisTemplate stringRedisTemplate) {
+            return new RedisClientIdLeaseManager(stringRedisTemplate);
+        }
+
+    }
+
+    @Configuration
+    @ConditionalOnExpression("'${jms.message.clientIdLeaseStore:redis}' == 'memory'")
+    protected static class InMemoryClientIdLeaseConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean
+        public ClientIdLeaseManager clientIdLeaseManager() {
+            return new InMemoryClientIdLeaseManager();
+        }
+
+    }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.config;
+
+import javax.jms.ConnectionFactory;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.kinglcc.spring.jms.core.ConnectionSharding;
+
+/**
+ * JmsConnectionShardingAutoConfiguration
+ * <pre>
+ * Spread the listener containers and the template over jms.message.connectionShards physical connections,
+ * enabled if more than one shard
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月28日 下午3:20:07
+ */
+@Configuration
+@ConditionalOnExpression("${jms.message.connectionShards:1} > 1")
+public class JmsConnectionShardingAutoConfiguration {
+
+    @Value("${jms.message.connectionShards:1}")
+    private int shards;
+    @Value("${jms.message.connectionSharding:ROUND_ROBIN}")
+    private ConnectionSharding.Strategy strategy;
+    @Value("${jms.message.connectionShardSessionCacheSize:10}")
+    private int sessionCacheSize;
+
+    @Bean
+    @ConditionalOnMissingBean
+    public ConnectionSharding connectionSharding(ConnectionFactory connectionFactory) {
+        ConnectionSharding connectionSharding = new ConnectionSharding(connectionFactory, shards);
+        connectionSharding.setStrategy(strategy);
+        connectionSharding.setSessionCacheSize(sessionCacheSize);
+        return connectionSharding;
+    }
+
+}
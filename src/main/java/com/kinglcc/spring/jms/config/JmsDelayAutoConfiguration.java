@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.config;
+
+import java.io.File;
+
+import org.apache.commons.lang.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.kinglcc.spring.jms.core.delay.JmsDelayQueue;
+
+/**
+ * JmsDelayAutoConfiguration
+ * <pre>
+ * The delayed send of {@link com.kinglcc.spring.jms.JmsService}, enabled by jms.message.delayedSend=true,
+ * the messages are journaled only if jms.message.delayedSendDirectory is set
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月25日 下午6:20:14
+ */
+@Configuration
+@ConditionalOnExpression("${jms.message.delayedSend:false}")
+public class JmsDelayAutoConfiguration {
+
+    @Value("${jms.message.delayedSendDirectory:}")
+    private String directory;
+    @Value("${jms.message.delayedSendSegmentSize:67108864}")
+    private int segmentSize;
+    @Value("${jms.message.delayedSendTickDuration:100}")
+    private long tickDuration;
+    @Value("${jms.message.delayedSendRetryInterval:1000}")
+    private long retryInterval;
+
+    @Bean
+    @ConditionalOnMissingBean
+    public JmsDelayQueue jmsDelayQueue() {
+        JmsDelayQueue delayQueue = new JmsDelayQueue();
+        if (StringUtils.isNotBlank(directory)) {
+            delayQueue.setDirectory(new File(directory));
+        }
+        delayQueue.setSegmentSize(segmentSize);
+        delayQueue.setTickDuration(tickDuration);
+        delayQueue.setRetryInterval(retryInterval);
+        return delayQueue;
+    }
+
+}
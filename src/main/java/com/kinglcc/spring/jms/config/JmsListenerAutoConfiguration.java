@@ -15,9 +15,12 @@
  */
 package com.kinglcc.spring.jms.config;
 
+import java.util.List;
+
 import org.springframework.beans.factory.BeanFactoryAware;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
@@ -31,9 +34,17 @@ import org.springframework.messaging.Message;
 import org.springframework.messaging.converter.MessageConverter;
 import org.springframework.messaging.handler.invocation.HandlerMethodArgumentResolver;
 
+import com.kinglcc.spring.jms.actuate.JmsListenersEndpoint;
 import com.kinglcc.spring.jms.core.Jackson2PayloadArgumentResolver;
+import com.kinglcc.spring.jms.core.converter.ConverterWarmer;
 import com.kinglcc.spring.jms.core.converter.Jackson2MessageAdapterConverter;
+import com.kinglcc.spring.jms.core.converter.JmsMessageConverter;
+import com.kinglcc.spring.jms.core.converter.TypeIdRegistry;
 import com.kinglcc.spring.jms.core.listener.JmsListenerEndpointRegistryAdapter;
+import com.kinglcc.spring.jms.core.listener.JmsListenerManager;
+import com.kinglcc.spring.jms.core.listener.LatencyTracker;
+import com.kinglcc.spring.jms.core.listener.ListenerContainerStarter;
+import com.kinglcc.spring.jms.core.listener.LocalTopicDispatcher;
 import com.kinglcc.spring.jms.core.listener.MethodJmsListenerConfigurer;
 
 /**
@@ -42,6 +53,7 @@ import com.kinglcc.spring.jms.core.listener.MethodJmsListenerConfigurer;
  * Custom {@link JmsListenerConfigurer}.
  * The converter for {@link Message}.
  * The JmsListenerEndpointRegistry support {@link BeanFactoryAware}
+ * The listener containers are managed by JMX and the actuator endpoint
  * </pre>
  *
  * @author liaochaochao
@@ -60,10 +72,85 @@ public class JmsListenerAutoConfiguration {
     @Autowired(required = false)
     @Qualifier("jackson2MessageAdapterConverter")
     private MessageConverter messageConverter;
+    @Autowired(required = false)
+    private TypeIdRegistry typeIdRegistry;
+    @Autowired(required = false)
+    private List<JmsMessageConverter> jmsMessageConverters;
+
+    @Value("${jms.message.startupThreads:4}")
+    private int startupThreads;
+    @Value("${jms.message.lazyStartupDelay:0}")
+    private long lazyStartupDelay;
+    @Value("${jms.message.localDelivery:false}")
+    private boolean localDelivery;
+    @Value("${jms.message.localDeliveryThreads:4}")
+    private int localDeliveryThreads;
+    @Value("${jms.message.localDeliveryByReference:false}")
+    private boolean localDeliveryByReference;
+    @Value("${jms.message.latencyTracking:false}")
+    private boolean latencyTracking;
+    @Value("${jms.message.typeDispatch:false}")
+    private boolean typeDispatch;
+    @Value("${jms.message.warmup:false}")
+    private boolean warmup;
+    @Value("${jms.message.warmupTime:1000}")
+    private long warmupTime;
+    @Value("${jms.message.warmupPackages:${jms.message.typeIdPackages:}}")
+    private String[] warmupPackages;
 
     @Bean(name = "jmsListenerEndpointRegistry")
     public JmsListenerEndpointRegistry jmsListenerEndpointRegistry() {
-        return new JmsListenerEndpointRegistryAdapter();
+        JmsListenerEndpointRegistryAdapter registry = new JmsListenerEndpointRegistryAdapter();
+        registry.setTypeIdRegistry(typeIdRegistry);
+        registry.setTypeDispatch(typeDispatch);
+        ListenerContainerStarter containerStarter = new ListenerContainerStarter();
+        containerStarter.setThreads(startupThreads);
+        containerStarter.setLazyDelay(lazyStartupDelay);
+        registry.setContainerStarter(containerStarter);
+        if (localDelivery) {
+            registry.setLocalTopicDispatcher(localTopicDispatcher());
+        }
+        if (latencyTracking) {
+            registry.setLatencyTracker(latencyTracker());
+        }
+        if (warmup) {
+            registry.setConverterWarmer(converterWarmer());
+        }
+        return registry;
+    }
+
+    @Bean
+    @ConditionalOnExpression("${jms.message.localDelivery:false}")
+    public LocalTopicDispatcher localTopicDispatcher() {
+        LocalTopicDispatcher dispatcher = new LocalTopicDispatcher();
+        dispatcher.setPoolSize(localDeliveryThreads);
+        dispatcher.setByReference(localDeliveryByReference);
+        return dispatcher;
+    }
+
+    @Bean
+    @ConditionalOnExpression("${jms.message.latencyTracking:false}")
+    public LatencyTracker latencyTracker() {
+        return new LatencyTracker();
+    }
+
+    @Bean
+    @ConditionalOnExpression("${jms.message.warmup:false}")
+    public ConverterWarmer converterWarmer() {
+        ConverterWarmer warmer = new ConverterWarmer();
+        if (null != jmsMessageConverters) {
+            warmer.setMessageConverters(jmsMessageConverters);
+        }
+        warmer.setAdapterConverter(messageConverter());
+        warmer.setBasePackages(warmupPackages);
+        warmer.setWarmupTime(warmupTime);
+        return warmer;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public JmsListenerManager jmsListenerManager() {
+        return new JmsListenerManager((JmsListenerEndpointRegistryAdapter) jmsListenerEndpointRegistry());
     }
 
     @Bean(name = "jackson2MessageAdapterConverter")
@@ -86,4 +173,16 @@ public class JmsListenerAutoConfiguration {
         return configurer;
     }
 
+    @Configuration
+    @ConditionalOnClass(name = "org.springframework.boot.actuate.endpoint.Endpoint")
+    protected static class JmsListenersEndpointConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean
+        public JmsListenersEndpoint jmsListenersEndpoint(JmsListenerManager jmsListenerManager) {
+            return new JmsListenersEndpoint(jmsListenerManager);
+        }
+
+    }
+
 }
@@ -15,9 +15,11 @@
  */
 package com.kinglcc.spring.jms.config;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.AutoConfigureBefore;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.jms.JmsAutoConfiguration;
 import org.springframework.context.annotation.Bean;
@@ -29,9 +31,12 @@ import org.springframework.jms.support.converter.MessageType;
 import org.springframework.jms.support.destination.DestinationResolver;
 
 import com.kinglcc.spring.jms.core.PrefixDestinationResolver;
+import com.kinglcc.spring.jms.core.claimcheck.ClaimCheck;
 import com.kinglcc.spring.jms.core.converter.GenericJmsMessageConverter;
 import com.kinglcc.spring.jms.core.converter.Jackson2JmsMessageConverter;
+import com.kinglcc.spring.jms.core.converter.JacksonAcceleratorPostProcessor;
 import com.kinglcc.spring.jms.core.converter.JmsMessageConverter;
+import com.kinglcc.spring.jms.core.converter.TypeIdRegistry;
 
 /**
  * JmsMessageAtuoConfiguration
@@ -39,6 +44,7 @@ import com.kinglcc.spring.jms.core.converter.JmsMessageConverter;
  * some jms tools:
  * {@link MessageConverter}
  * {@link DestinationResolver}
+ * The jackson mappers are accelerated by jms.message.jacksonAfterburner=true
  * </pre>
  *
  * @author liaochaochao
@@ -49,8 +55,15 @@ import com.kinglcc.spring.jms.core.converter.JmsMessageConverter;
 @AutoConfigureBefore(JmsAutoConfiguration.class)
 public class JmsMessageAtuoConfiguration {
 
+    @Autowired(required = false)
+    private ClaimCheck claimCheck;
+
     @Value("${jms.message.encoding:UTF-8}")
     private String encoding;
+    @Value("${jms.message.compactTypeId:false}")
+    private boolean compactTypeId;
+    @Value("${jms.message.typeIdPackages:}")
+    private String[] typeIdPackages;
 
     @Bean
     @ConditionalOnMissingBean
@@ -58,6 +71,20 @@ public class JmsMessageAtuoConfiguration {
         return new PrefixDestinationResolver();
     }
 
+    @Bean
+    @ConditionalOnExpression("${jms.message.jacksonAfterburner:false}")
+    public static JacksonAcceleratorPostProcessor jacksonAcceleratorPostProcessor() {
+        return new JacksonAcceleratorPostProcessor();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public TypeIdRegistry typeIdRegistry() {
+        TypeIdRegistry typeIdRegistry = new TypeIdRegistry();
+        typeIdRegistry.setBasePackages(typeIdPackages);
+        return typeIdRegistry;
+    }
+
     @Bean(name = "jackson2JmsMessageConverter")
     @Order
     @ConditionalOnMissingBean(JmsMessageConverter.class)
@@ -65,12 +92,17 @@ public class JmsMessageAtuoConfiguration {
         Jackson2JmsMessageConverter messageConverter = new Jackson2JmsMessageConverter();
         messageConverter.setTargetType(MessageType.TEXT);
         messageConverter.setEncoding(encoding);
+        messageConverter.setTypeIdRegistry(typeIdRegistry());
+        messageConverter.setCompactTypeId(compactTypeId);
+        messageConverter.setClaimCheck(claimCheck);
         return messageConverter;
     }
 
     @Bean(name = "genericJmsMessageConverter")
     public MessageConverter messageConverter() {
-        return new GenericJmsMessageConverter();
+        GenericJmsMessageConverter messageConverter = new GenericJmsMessageConverter();
+        messageConverter.setCompactConverterName(compactTypeId);
+        return messageConverter;
     }
 
 }
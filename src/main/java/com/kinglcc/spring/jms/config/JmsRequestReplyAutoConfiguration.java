@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.config;
+
+import org.apache.commons.lang.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.core.JmsTemplate;
+
+import com.kinglcc.spring.jms.core.ClientIdGenerator;
+import com.kinglcc.spring.jms.core.reply.JmsReplyQueue;
+
+/**
+ * JmsRequestReplyAutoConfiguration
+ * <pre>
+ * The request/reply of {@link com.kinglcc.spring.jms.JmsService}, enabled by jms.message.requestReply=true,
+ * the reply queue of the node is named by the application, the host and the port if not set,
+ * set a stable name of each instance by jms.message.replyQueue if the host or the port changes on restart,
+ * the replies should be sent with a time-to-live, see {@link JmsReplyQueue}
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月28日 上午11:02:51
+ */
+@Configuration
+@ConditionalOnExpression("${jms.message.requestReply:false}")
+@AutoConfigureAfter(JmsAnnotationAtuoConfiguration.class)
+public class JmsRequestReplyAutoConfiguration {
+
+    @Value("${jms.message.replyQueue:}")
+    private String replyQueue;
+    @Value("${jms.message.replyConcurrency:1}")
+    private String concurrency;
+    @Value("${jms.message.replyTimeoutTick:10}")
+    private long tickDuration;
+    @Value("${jms.message.clientId:}")
+    private String clientId;
+    @Value("${spring.application.name}")
+    private String applicationName;
+    @Value("${server.port}")
+    private String applicationPort;
+
+    @Bean
+    @ConditionalOnMissingBean
+    public JmsReplyQueue jmsReplyQueue(JmsTemplate jmsTemplate) {
+        String replyQueueName = replyQueue;
+        if (StringUtils.isBlank(replyQueueName)) {
+            replyQueueName = new ClientIdGenerator(clientId, applicationName, applicationPort).generateId("reply");
+        }
+        JmsReplyQueue jmsReplyQueue = new JmsReplyQueue(jmsTemplate, replyQueueName);
+        jmsReplyQueue.setConcurrency(concurrency);
+        jmsReplyQueue.setTickDuration(tickDuration);
+        return jmsReplyQueue;
+    }
+
+}
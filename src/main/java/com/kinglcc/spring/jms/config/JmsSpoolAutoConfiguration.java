@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.config;
+
+import java.io.File;
+
+import org.apache.commons.lang.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.core.JmsTemplate;
+
+import com.kinglcc.spring.jms.core.listener.LocalTopicDispatcher;
+import com.kinglcc.spring.jms.core.spool.JmsSpool;
+
+/**
+ * JmsSpoolAutoConfiguration
+ * <pre>
+ * The local store-and-forward spool of {@link com.kinglcc.spring.jms.JmsService},
+ * enabled by jms.message.spool=true
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月17日 下午4:26:10
+ */
+@Configuration
+@ConditionalOnExpression("${jms.message.spool:false}")
+@AutoConfigureAfter(JmsAnnotationAtuoConfiguration.class)
+public class JmsSpoolAutoConfiguration {
+
+    @Autowired(required = false)
+    private LocalTopicDispatcher localTopicDispatcher;
+
+    @Value("${jms.message.spoolDirectory:}")
+    private String directory;
+    @Value("${jms.message.spoolSegmentSize:67108864}")
+    private int segmentSize;
+    @Value("${jms.message.spoolBatchSize:100}")
+    private int batchSize;
+    @Value("${jms.message.spoolRetryInterval:1000}")
+    private long retryInterval;
+    @Value("${jms.message.sendTimestamp:false}")
+    private boolean sendTimestamp;
+
+    @Bean
+    @ConditionalOnMissingBean
+    public JmsSpool jmsSpool(JmsTemplate jmsTemplate) {
+        JmsSpool spool = new JmsSpool(jmsTemplate);
+        if (StringUtils.isNotBlank(directory)) {
+            spool.setDirectory(new File(directory));
+        }
+        spool.setSegmentSize(segmentSize);
+        spool.setBatchSize(batchSize);
+        spool.setRetryInterval(retryInterval);
+        spool.setSendTimestamp(sendTimestamp);
+        spool.setLocalTopicDispatcher(localTopicDispatcher);
+        return spool;
+    }
+
+}
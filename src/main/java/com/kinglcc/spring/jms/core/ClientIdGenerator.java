@@ -32,6 +32,7 @@ public class ClientIdGenerator {
 
     private static final String SP = "-";
     private final String clientIdPrefix;
+    private final String sharedIdPrefix;
 
     private AtomicInteger instanceNumber = new AtomicInteger(0);
     private String hostName;
@@ -43,11 +44,13 @@ public class ClientIdGenerator {
         if (InetUtils.LOCALHOST.equals(hostName)) {
             this.hostName = InetUtils.getLocalAddress();
         }
+        this.applicationName = applicationName;
         this.applicationPort = applicationPort;
         String clientIdPrefix = applicationName;
         if (StringUtils.isNotBlank(clientId)) {
             clientIdPrefix = clientId;
         }
+        this.sharedIdPrefix = clientIdPrefix + SP;
         StringBuilder sb = new StringBuilder(clientIdPrefix);
         sb.append(SP).append(hostName).append(SP).append(applicationPort).append(SP);
         this.clientIdPrefix = sb.toString();
@@ -66,6 +69,17 @@ public class ClientIdGenerator {
         return new StringBuilder(clientIdPrefix).append(jmsListenerId).toString();
     }
 
+    /**
+     * Generate the id shared by the nodes of the application, without the host and the port,
+     * the id should be leased to one node at a time
+     *
+     * @param jmsListenerId the id of the jms listener
+     * @return the shared id
+     */
+    public String generateSharedId(String jmsListenerId) {
+        return new StringBuilder(sharedIdPrefix).append(jmsListenerId).toString();
+    }
+
     public String getClientIdPrefix() {
         return clientIdPrefix;
     }
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jms.connection.CachingConnectionFactory;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import com.kinglcc.spring.jms.core.listener.DynamicMessageListenerContainer;
+
+/**
+ * ConnectionSharding
+ * <pre>
+ * Spread the listener containers and the template over several physical connections of the target factory.
+ * Each shard is one shared connection with the cached sessions, the template takes the shards in turn,
+ * the container is assigned to a shard in turn or by the hash of the endpoint id.
+ * The consumers of a container share the connection of its shard, and the containers of the durable
+ * or shared subscriptions keep their own connections for the client id.
+ * The stats of each shard show whether a single connection is the ceiling, the sent messages are
+ * counted by the producers of the physical sessions, so the sends of the template and the replies
+ * of the containers are both counted.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月28日 下午2:36:18
+ */
+@ManagedResource(description = "The physical connections of the listener containers and the template")
+public class ConnectionSharding implements InitializingBean, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionSharding.class);
+
+    public enum Strategy {
+        ROUND_ROBIN, ENDPOINT
+    }
+
+    private final ConnectionFactory targetConnectionFactory;
+    private final int shardCount;
+    private final AtomicInteger containerSequence = new AtomicInteger();
+    private final AtomicInteger templateSequence = new AtomicInteger();
+    private final ConnectionFactory connectionFactory = new RoundRobinConnectionFactory();
+
+    private Strategy strategy = Strategy.ROUND_ROBIN;
+    private int sessionCacheSize = 10;
+    private Shard[] shards;
+
+    public ConnectionSharding(ConnectionFactory targetConnectionFactory, int shardCount) {
+        Assert.isTrue(shardCount > 0, "'shardCount' must be positive");
+        this.targetConnectionFactory = targetConnectionFactory;
+        this.shardCount = shardCount;
+    }
+
+    /**
+     * The connection factory taking the shards in turn, for the template
+     *
+     * @return the connection factory
+     */
+    public ConnectionFactory getConnectionFactory() {
+        return connectionFactory;
+    }
+
+    /**
+     * Assign the container to a shard
+     *
+     * @param endpointId the endpoint id of the container
+     * @param container the container
+     * @return the connection factory of the shard
+     */
+    public ConnectionFactory assign(String endpointId, DefaultMessageListenerContainer container) {
+        int index = Strategy.ENDPOINT == strategy && null != endpointId
+                ? endpointId.hashCode() : containerSequence.getAndIncrement();
+        Shard shard = shards[(index & Integer.MAX_VALUE) % shardCount];
+        shard.containers.add(container);
+        return shard;
+    }
+
+    @ManagedAttribute(description = "The stats of each connection shard")
+    public Map<String, Map<String, Object>> getShards() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<String, Map<String, Object>>();
+        for (int i = 0; i < shardCount; i++) {
+            stats.put(String.valueOf(i), shards[i].getStats());
+        }
+        return stats;
+    }
+
+    public void setStrategy(Strategy strategy) {
+        this.strategy = strategy;
+    }
+
+    /**
+     * The cached sessions of each shard
+     *
+     * @param sessionCacheSize the cached sessions
+     */
+    public void setSessionCacheSize(int sessionCacheSize) {
+        this.sessionCacheSize = sessionCacheSize;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            Shard shard = new Shard(targetConnectionFactory);
+            shard.setSessionCacheSize(sessionCacheSize);
+            shard.setCacheConsumers(false);
+            shard.setReconnectOnException(true);
+            shards[i] = shard;
+        }
+        LOGGER.info("Spread the jms connections over {} shards by {}", shardCount, strategy);
+    }
+
+    @Override
+    public void destroy() {
+        for (Shard shard : shards) {
+            shard.destroy();
+        }
+    }
+
+    private class RoundRobinConnectionFactory implements ConnectionFactory {
+
+        @Override
+        public Connection createConnection() throws JMSException {
+            Shard shard = shards[(templateSequence.getAndIncrement() & Integer.MAX_VALUE) % shardCount];
+            return shard.createConnection();
+        }
+
+        @Override
+        public Connection createConnection(String userName, String password) throws JMSException {
+            throw new javax.jms.IllegalStateException("The sharded connections are created with the target "
+                    + "connection factory, not by the user name and password");
+        }
+    }
+
+    /**
+     * Wrap the physical session or producer, the producers created by the session are wrapped too,
+     * and the sends of the producers are counted. The proxy is created once for each physical session
+     * and each cached producer, not for each send
+     */
+    private static Object countSends(final Object target, final AtomicLong sentMessages) {
+        return Proxy.newProxyInstance(target.getClass().getClassLoader(), ClassUtils.getAllInterfaces(target),
+                new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        String methodName = method.getName();
+                        if ("equals".equals(methodName) && null != args && 1 == args.length) {
+                            return proxy == args[0];
+                        }
+                        if ("hashCode".equals(methodName) && null == args) {
+                            return System.identityHashCode(proxy);
+                        }
+                        Object result;
+                        try {
+                            result = method.invoke(target, args);
+                        } catch (InvocationTargetException ex) {
+                            throw ex.getTargetException();
+                        }
+                        if (result instanceof MessageProducer) {
+                            return countSends(result, sentMessages);
+                        }
+                        if ("send".equals(methodName) || "publish".equals(methodName)) {
+                            sentMessages.incrementAndGet();
+                        }
+                        return result;
+                    }
+                });
+    }
+
+    private static class Shard extends CachingConnectionFactory {
+
+        private final List<DefaultMessageListenerContainer> containers =
+                new CopyOnWriteArrayList<DefaultMessageListenerContainer>();
+        private final AtomicLong sentMessages = new AtomicLong();
+
+        Shard(ConnectionFactory targetConnectionFactory) {
+            super(targetConnectionFactory);
+        }
+
+        @Override
+        protected Session getCachedSessionProxy(Session target, LinkedList<Session> sessionList) {
+            return super.getCachedSessionProxy((Session) countSends(target, sentMessages), sessionList);
+        }
+
+        Map<String, Object> getStats() {
+            long receivedMessages = 0;
+            int consumers = 0;
+            for (DefaultMessageListenerContainer container : containers) {
+                consumers += container.getActiveConsumerCount();
+                if (container instanceof DynamicMessageListenerContainer) {
+                    receivedMessages += ((DynamicMessageListenerContainer) container).getReceivedMessages();
+                }
+            }
+            Map<String, Object> stats = new LinkedHashMap<String, Object>();
+            stats.put("containers", containers.size());
+            stats.put("activeConsumers", consumers);
+            stats.put("receivedMessages", receivedMessages);
+            stats.put("sentMessages", sentMessages.get());
+            return stats;
+        }
+    }
+
+}
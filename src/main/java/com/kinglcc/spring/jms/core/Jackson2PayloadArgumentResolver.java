@@ -15,9 +15,13 @@
  */
 package com.kinglcc.spring.jms.core;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
+import java.util.Iterator;
 
+import org.apache.commons.io.IOUtils;
 import org.springframework.core.MethodParameter;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.converter.MessageConversionException;
@@ -38,7 +42,9 @@ import com.kinglcc.spring.jms.core.converter.Jackson2JmsMessageConverter.Generic
 
 /**
  * Jackson2PayloadArgumentResolver
- * <pre>The payload argument resolver implments using Jackson2</pre>
+ * <pre>The payload argument resolver implments using Jackson2.
+ * The {@link Iterator} parameter iterates the JSON array element by element,
+ * over the stream of the claim check body if any.</pre>
  *
  * @author liaochaochao
  * @since 2016年1月28日 下午4:19:17
@@ -109,8 +115,11 @@ public class Jackson2PayloadArgumentResolver extends PayloadArgumentResolver {
     private Object convertFromMessage(MethodParameter parameter, Message<?> message) {
         Object payload = message.getPayload();
         Class<?> targetClass = parameter.getParameterType();
+        if (Iterator.class == targetClass) {
+            return convertIteratorFromMessage(parameter, message);
+        }
         if (targetClass.isInterface() || Modifier.isAbstract(targetClass.getModifiers())) {
-            return payload;
+            return payload instanceof InputStream ? readContent(message, (InputStream) payload) : payload;
         }
 
         if (this.converter instanceof GenericMessageAdapterConverter) {
@@ -124,6 +133,30 @@ public class Jackson2PayloadArgumentResolver extends PayloadArgumentResolver {
         return payload;
     }
 
+    private Object convertIteratorFromMessage(MethodParameter parameter, Message<?> message) {
+        Object payload = message.getPayload();
+        if (payload instanceof Iterable) {
+            return ((Iterable<?>) payload).iterator();
+        }
+        if (this.converter instanceof GenericMessageAdapterConverter) {
+            return convertJavaTypeFromMessage(message, parameter);
+        }
+        return payload;
+    }
+
+    /**
+     * Read the JSON of the stream payload, for the parameter without the concrete type
+     */
+    private String readContent(Message<?> message, InputStream in) {
+        try {
+            return IOUtils.toString(in, "UTF-8");
+        } catch (IOException ex) {
+            throw new MessageConversionException(message, "Could not read JSON: " + ex.getMessage(), ex);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
     private boolean isGenericMessage(Object payload) {
         return payload instanceof GenericMessage;
     }
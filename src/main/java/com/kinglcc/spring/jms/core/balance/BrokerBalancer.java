@@ -0,0 +1,282 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.balance;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.ConnectionFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jms.connection.CachingConnectionFactory;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.util.Assert;
+
+import com.kinglcc.spring.jms.JmsException;
+
+/**
+ * BrokerBalancer
+ * <pre>
+ * Balance the sends of {@link com.kinglcc.spring.jms.JmsService} over several independent brokers.
+ * Each broker is weighted by the moving average of its send latency and error rate, and skipped for
+ * the skip interval after the consecutive failures, a failed send is tried on the next broker.
+ * The messages of a message group go to the same broker by the rendezvous hash of the group,
+ * a failed send of the group is not tried on the next broker until its broker is skipped, so
+ * the group moves to the next broker as a whole while skipped, and back after it recovers.
+ * If all brokers are skipped, all of them are tried.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月28日 下午4:42:10
+ */
+@ManagedResource(description = "The send balancer over the brokers")
+public class BrokerBalancer implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BrokerBalancer.class);
+
+    private static final double ALPHA = 0.2;
+    private static final double INITIAL_LATENCY = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final List<Broker> brokers = new ArrayList<Broker>();
+
+    private int failureThreshold = 2;
+    private long skipInterval = 5000;
+
+    /**
+     * Create the balancer, the templates of the brokers copy the settings of the template
+     *
+     * @param template the template of the settings
+     * @param connectionFactories the connection factories of the brokers by name
+     */
+    public BrokerBalancer(JmsTemplate template, Map<String, ConnectionFactory> connectionFactories) {
+        Assert.notEmpty(connectionFactories, "'connectionFactories' must not be empty");
+        for (Map.Entry<String, ConnectionFactory> entry : connectionFactories.entrySet()) {
+            brokers.add(new Broker(entry.getKey(), copyTemplate(template, entry.getValue())));
+        }
+    }
+
+    private static JmsTemplate copyTemplate(JmsTemplate template, ConnectionFactory connectionFactory) {
+        CachingConnectionFactory cachingConnectionFactory = new CachingConnectionFactory(connectionFactory);
+        cachingConnectionFactory.setReconnectOnException(true);
+        JmsTemplate copy = new JmsTemplate(cachingConnectionFactory);
+        copy.setDestinationResolver(template.getDestinationResolver());
+        copy.setMessageConverter(template.getMessageConverter());
+        copy.setPubSubDomain(template.isPubSubDomain());
+        copy.setSessionTransacted(template.isSessionTransacted());
+        copy.setExplicitQosEnabled(template.isExplicitQosEnabled());
+        copy.setDeliveryMode(template.getDeliveryMode());
+        copy.setPriority(template.getPriority());
+        copy.setTimeToLive(template.getTimeToLive());
+        return copy;
+    }
+
+    /**
+     * Run the callback with the template of a broker, try the next broker if failed.
+     * The send of a message group is tried on the next broker only if its broker is skipped,
+     * otherwise the failure is thrown, so the later messages of the group never overtake it.
+     *
+     * @param messageGroup the message group, the broker is chosen by the weight if null
+     * @param callback the callback
+     * @return the result of the callback
+     */
+    public <T> T execute(String messageGroup, BrokerCallback<T> callback) {
+        List<Broker> candidates = candidates(messageGroup);
+        RuntimeException failure = null;
+        for (Broker broker : candidates) {
+            long start = System.nanoTime();
+            try {
+                T result = callback.doWithTemplate(broker.template);
+                broker.succeeded(System.nanoTime() - start);
+                return result;
+            } catch (RuntimeException ex) {
+                broker.failed(System.nanoTime() - start);
+                if (null != messageGroup && broker.isAvailable(System.currentTimeMillis())) {
+                    throw new JmsException("Send the message group " + messageGroup + " to the broker "
+                            + broker.name + " error", ex);
+                }
+                LOGGER.warn("Send to the broker {} error, try the next broker", broker.name, ex);
+                failure = ex;
+            }
+        }
+        throw new JmsException("Send to all brokers error", failure);
+    }
+
+    private List<Broker> candidates(String messageGroup) {
+        long now = System.currentTimeMillis();
+        List<Broker> available = new ArrayList<Broker>(brokers.size());
+        for (Broker broker : brokers) {
+            if (broker.isAvailable(now)) {
+                available.add(broker);
+            }
+        }
+        if (available.isEmpty()) {
+            available.addAll(brokers);
+        }
+        List<Broker> candidates = new ArrayList<Broker>(brokers.size());
+        while (!available.isEmpty()) {
+            Broker broker = null == messageGroup ? chooseByWeight(available) : chooseByGroup(available, messageGroup);
+            available.remove(broker);
+            candidates.add(broker);
+        }
+        return candidates;
+    }
+
+    private static Broker chooseByWeight(List<Broker> available) {
+        double[] weights = new double[available.size()];
+        double total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = available.get(i).weight();
+            total += weights[i];
+        }
+        double random = ThreadLocalRandom.current().nextDouble() * total;
+        for (int i = 0; i < weights.length; i++) {
+            random -= weights[i];
+            if (random < 0) {
+                return available.get(i);
+            }
+        }
+        return available.get(weights.length - 1);
+    }
+
+    private static Broker chooseByGroup(List<Broker> available, String messageGroup) {
+        Broker chosen = null;
+        long best = Long.MIN_VALUE;
+        for (Broker broker : available) {
+            long score = mix(messageGroup.hashCode() * 31L + broker.name.hashCode());
+            if (null == chosen || score > best) {
+                chosen = broker;
+                best = score;
+            }
+        }
+        return chosen;
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    @ManagedAttribute(description = "The health of each broker")
+    public Map<String, Map<String, Object>> getBrokers() {
+        long now = System.currentTimeMillis();
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<String, Map<String, Object>>();
+        for (Broker broker : brokers) {
+            stats.put(broker.name, broker.getStats(now));
+        }
+        return stats;
+    }
+
+    /**
+     * Skip the broker after the consecutive failures
+     *
+     * @param failureThreshold the consecutive failures
+     */
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    /**
+     * The time to skip the failed broker, then it's tried again
+     *
+     * @param skipInterval the interval in milliseconds
+     */
+    public void setSkipInterval(long skipInterval) {
+        this.skipInterval = skipInterval;
+    }
+
+    @Override
+    public void destroy() {
+        for (Broker broker : brokers) {
+            ((CachingConnectionFactory) broker.template.getConnectionFactory()).destroy();
+        }
+    }
+
+    /**
+     * The callback with the template of the chosen broker
+     */
+    public interface BrokerCallback<T> {
+
+        T doWithTemplate(JmsTemplate template);
+
+    }
+
+    private class Broker {
+
+        private final String name;
+        private final JmsTemplate template;
+
+        private double latency = INITIAL_LATENCY;
+        private double errorRate;
+        private int consecutiveFailures;
+        private long skippedUntil;
+        private long sentMessages;
+        private long failedSends;
+
+        Broker(String name, JmsTemplate template) {
+            this.name = name;
+            this.template = template;
+        }
+
+        synchronized boolean isAvailable(long now) {
+            return now >= skippedUntil;
+        }
+
+        synchronized double weight() {
+            return (1 - errorRate) * (1 - errorRate) / latency;
+        }
+
+        synchronized void succeeded(long elapsed) {
+            latency += ALPHA * (elapsed - latency);
+            errorRate -= ALPHA * errorRate;
+            consecutiveFailures = 0;
+            sentMessages++;
+        }
+
+        synchronized void failed(long elapsed) {
+            latency += ALPHA * (elapsed - latency);
+            errorRate += ALPHA * (1 - errorRate);
+            failedSends++;
+            if (++consecutiveFailures >= failureThreshold) {
+                skippedUntil = System.currentTimeMillis() + skipInterval;
+                LOGGER.warn("Skip the broker {} for {}ms after {} failures", name, skipInterval,
+                        consecutiveFailures);
+            }
+        }
+
+        synchronized Map<String, Object> getStats(long now) {
+            Map<String, Object> stats = new LinkedHashMap<String, Object>();
+            stats.put("available", now >= skippedUntil);
+            stats.put("latency", latency / TimeUnit.MILLISECONDS.toNanos(1));
+            stats.put("errorRate", errorRate);
+            stats.put("sentMessages", sentMessages);
+            stats.put("failedSends", failedSends);
+            return stats;
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.claimcheck;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * BlobStore
+ * <pre>
+ * The store of the oversized message bodies of the {@link ClaimCheck}.
+ * The store should be shared by the senders and the receivers.
+ * </pre>
+ * @see FileSystemBlobStore
+ *
+ * @author liaochaochao
+ * @since 2016年3月21日 上午10:05:12
+ */
+public interface BlobStore {
+
+    /**
+     * Store the body
+     *
+     * @param body the body
+     * @return the reference of the blob
+     * @throws IOException in case of I/O errors
+     */
+    String put(byte[] body) throws IOException;
+
+    /**
+     * Open the blob to read
+     *
+     * @param reference the reference of the blob
+     * @return the stream of the body, should be closed by the caller
+     * @throws IOException in case of I/O errors, or the blob doesn't exist
+     */
+    InputStream open(String reference) throws IOException;
+
+    /**
+     * Delete the blob
+     *
+     * @param reference the reference of the blob
+     * @throws IOException in case of I/O errors
+     */
+    void delete(String reference) throws IOException;
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.claimcheck;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ClaimCheck
+ * <pre>
+ * The claim check of the oversized message bodies.
+ * The body larger than the threshold is stored in the {@link BlobStore},
+ * and the message carries only the reference in the {@link #CLAIM_CHECK_PROP}.
+ * The body is streamed from the store when the message is converted, and the blob
+ * is released after the message of a queue has been handled successfully.
+ * The blob of a message sent to several destinations is marked by the {@link #SHARED_PROP},
+ * it's never released by the listeners, but deleted by the expiration of the store.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月21日 上午11:02:37
+ */
+public class ClaimCheck {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClaimCheck.class);
+
+    public static final String CLAIM_CHECK_PROP = "claimCheck@";
+    public static final String SHARED_PROP = "claimCheckShared@";
+
+    private final BlobStore blobStore;
+    private int threshold = 1024 * 1024;
+
+    public ClaimCheck(BlobStore blobStore) {
+        this.blobStore = blobStore;
+    }
+
+    public boolean isOversized(int length) {
+        return length > threshold;
+    }
+
+    /**
+     * Store the body and mark the message with the reference
+     *
+     * @param message the message without body
+     * @param body the body
+     * @throws JMSException if the body can't be stored
+     */
+    public void checkIn(Message message, byte[] body) throws JMSException {
+        try {
+            message.setStringProperty(CLAIM_CHECK_PROP, blobStore.put(body));
+        } catch (IOException ex) {
+            throw asJmsException("Could not store the message body of " + body.length + " bytes", ex);
+        }
+    }
+
+    public String getReference(Message message) throws JMSException {
+        return message.getStringProperty(CLAIM_CHECK_PROP);
+    }
+
+    /**
+     * Open the body of the reference
+     *
+     * @param reference the reference of the body
+     * @return the stream of the body, should be closed by the caller
+     * @throws JMSException if the body can't be read
+     */
+    public InputStream checkOut(String reference) throws JMSException {
+        try {
+            return blobStore.open(reference);
+        } catch (IOException ex) {
+            throw asJmsException("Could not read the message body of " + reference, ex);
+        }
+    }
+
+    /**
+     * Delete the body of the handled message unless it's shared, the errors are only logged
+     *
+     * @param message the handled message
+     */
+    public void release(Message message) {
+        try {
+            String reference = getReference(message);
+            if (message.propertyExists(SHARED_PROP) && message.getBooleanProperty(SHARED_PROP)) {
+                LOGGER.debug("The claim check {} is shared by the destinations, left to the expiration", reference);
+                return;
+            }
+            if (null != reference) {
+                blobStore.delete(reference);
+            }
+        } catch (Exception ex) {
+            LOGGER.warn("Could not release the claim check of the message", ex);
+        }
+    }
+
+    private static JMSException asJmsException(String reason, Exception cause) {
+        JMSException ex = new JMSException(reason);
+        ex.setLinkedException(cause);
+        ex.initCause(cause);
+        return ex;
+    }
+
+    public void setThreshold(int threshold) {
+        this.threshold = threshold;
+    }
+
+}
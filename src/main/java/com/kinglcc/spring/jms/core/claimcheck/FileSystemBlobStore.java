@@ -0,0 +1,181 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.claimcheck;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * FileSystemBlobStore
+ * <pre>
+ * The {@link BlobStore} of a local or mounted directory, one file for each blob.
+ * The blob can be read by a memory-mapped buffer instead of the file stream.
+ * The blobs older than the expiration are deleted at most once per sweep interval,
+ * for the blobs of topics are not deleted by the receivers.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月21日 上午10:20:48
+ */
+public class FileSystemBlobStore implements BlobStore, InitializingBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileSystemBlobStore.class);
+
+    private static final String BLOB_SUFFIX = ".blob";
+    private static final long SWEEP_INTERVAL = 60 * 60 * 1000L;
+
+    private File directory;
+    private boolean memoryMapped;
+    private long expiration = 7 * 24 * 60 * 60 * 1000L;
+    private volatile long lastSweep;
+
+    @Override
+    public String put(byte[] body) throws IOException {
+        sweepIfNecessary();
+        String reference = UUID.randomUUID().toString();
+        File tmp = new File(directory, reference + ".tmp");
+        FileUtils.writeByteArrayToFile(tmp, body);
+        if (!tmp.renameTo(blobFile(reference))) {
+            FileUtils.deleteQuietly(tmp);
+            throw new IOException("Could not store the blob " + reference);
+        }
+        return reference;
+    }
+
+    @Override
+    public InputStream open(String reference) throws IOException {
+        File file = blobFile(reference);
+        if (!file.exists()) {
+            throw new FileNotFoundException("NOT FOUND the blob " + reference);
+        }
+        if (!memoryMapped) {
+            return new BufferedInputStream(new FileInputStream(file));
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return new ByteBufferInputStream(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Override
+    public void delete(String reference) throws IOException {
+        File file = blobFile(reference);
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not delete the blob " + reference);
+        }
+    }
+
+    private File blobFile(String reference) {
+        return new File(directory, reference + BLOB_SUFFIX);
+    }
+
+    private void sweepIfNecessary() {
+        long now = System.currentTimeMillis();
+        if (expiration <= 0 || now - lastSweep < SWEEP_INTERVAL) {
+            return;
+        }
+        lastSweep = now;
+        File[] files = directory.listFiles();
+        if (null == files) {
+            return;
+        }
+        for (File file : files) {
+            if (now - file.lastModified() > expiration && !file.delete()) {
+                LOGGER.warn("Could not delete the expired blob {}", file);
+            }
+        }
+    }
+
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Read the blob by a memory-mapped buffer
+     *
+     * @param memoryMapped memory-mapped or not
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    /**
+     * The expiration of the blobs not deleted by the receivers, 0 to keep them forever
+     *
+     * @param expiration the expiration in milliseconds
+     */
+    public void setExpiration(long expiration) {
+        this.expiration = expiration;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        if (null == directory) {
+            directory = new File(System.getProperty("java.io.tmpdir"), "jms-claim-check");
+        }
+        FileUtils.forceMkdir(directory);
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(bytes, off, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.converter;
+
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.ClassUtils;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * ConverterWarmer
+ * <pre>
+ * Warm up the converters before the listener containers start.
+ * The {@link Jackson2Converter} classes of the base packages and the listener parameter types
+ * are converted with synthetic payloads, created by their default constructors, so the
+ * serializers and deserializers of Jackson are cached, the converter of each class is resolved,
+ * and the conversion paths are compiled by the JIT. The conversions are repeated
+ * until the warmup time elapses, at least once.
+ * The types without default constructor only get their serializers and deserializers cached.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月25日 上午10:26:14
+ */
+public class ConverterWarmer implements BeanClassLoaderAware {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConverterWarmer.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String[] EXCLUDED_PACKAGES = { "java.", "javax.", "org.springframework." };
+
+    private List<JmsMessageConverter> messageConverters = new ArrayList<JmsMessageConverter>();
+    private MessageConverter adapterConverter;
+    private String[] basePackages = new String[0];
+    private long warmupTime = 1000;
+    private ClassLoader beanClassLoader = ClassUtils.getDefaultClassLoader();
+
+    /**
+     * Warm up the converters of the scanned classes and the listener parameter types
+     *
+     * @param listenerTypes the listener parameter types
+     */
+    public void warmup(Collection<Type> listenerTypes) {
+        long start = System.currentTimeMillis();
+        List<Object> payloads = new ArrayList<Object>();
+        for (Class<?> type : scanTypes()) {
+            primeCaches(type);
+            Object payload = createPayload(type);
+            if (null != payload) {
+                payloads.add(payload);
+            }
+        }
+        List<Type> targetTypes = new ArrayList<Type>();
+        for (Type type : listenerTypes) {
+            if (primeListenerType(type)) {
+                targetTypes.add(type);
+            }
+        }
+        int rounds = 0;
+        do {
+            warmupProducers(payloads);
+            warmupListeners(targetTypes);
+            rounds++;
+        } while (System.currentTimeMillis() - start < warmupTime && (!payloads.isEmpty() || !targetTypes.isEmpty()));
+        LOGGER.info("Warmed up the converters of {} payloads and {} listener types in {} rounds, {}ms",
+                payloads.size(), targetTypes.size(), rounds, System.currentTimeMillis() - start);
+    }
+
+    private Set<Class<?>> scanTypes() {
+        Set<Class<?>> types = new LinkedHashSet<Class<?>>();
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(new AnnotationTypeFilter(Jackson2Converter.class));
+        for (String basePackage : basePackages) {
+            if (StringUtils.isBlank(basePackage)) {
+                continue;
+            }
+            for (BeanDefinition candidate : scanner.findCandidateComponents(basePackage.trim())) {
+                try {
+                    types.add(ClassUtils.forName(candidate.getBeanClassName(), beanClassLoader));
+                } catch (ClassNotFoundException | LinkageError ex) {
+                    LOGGER.warn("Could not load {} to warm up", candidate.getBeanClassName(), ex);
+                }
+            }
+        }
+        return types;
+    }
+
+    private void primeCaches(Class<?> type) {
+        for (JmsMessageConverter converter : messageConverters) {
+            if (converter instanceof Jackson2JmsMessageConverter) {
+                ObjectMapper objectMapper = ((Jackson2JmsMessageConverter) converter).getObjectMapper();
+                objectMapper.canSerialize(type);
+                objectMapper.canDeserialize(objectMapper.constructType(type));
+            }
+        }
+    }
+
+    private static Object createPayload(Class<?> type) {
+        if (!isPayloadClass(type) || !ClassUtils.hasConstructor(type)) {
+            return null;
+        }
+        try {
+            return BeanUtils.instantiate(type);
+        } catch (RuntimeException | LinkageError ex) {
+            LOGGER.debug("Could not create the payload of {} to warm up", type, ex);
+            return null;
+        }
+    }
+
+    private static boolean isPayloadClass(Class<?> type) {
+        if (type.isPrimitive() || type.isInterface() || type.isArray() || Modifier.isAbstract(type.getModifiers())) {
+            return false;
+        }
+        for (String excluded : EXCLUDED_PACKAGES) {
+            if (type.getName().startsWith(excluded)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean primeListenerType(Type type) {
+        ObjectMapper objectMapper = getAdapterObjectMapper();
+        if (null == objectMapper) {
+            return false;
+        }
+        JavaType javaType = objectMapper.constructType(type);
+        JavaType elementType = getElementType(javaType);
+        if (null == elementType || !isPayloadClass(elementType.getRawClass())) {
+            return false;
+        }
+        if (Iterator.class != javaType.getRawClass()) {
+            objectMapper.canDeserialize(javaType);
+        }
+        return null != createPayload(elementType.getRawClass());
+    }
+
+    private static boolean isArrayLike(JavaType javaType) {
+        return javaType.isCollectionLikeType() || javaType.isArrayType() || Iterator.class == javaType.getRawClass();
+    }
+
+    private static JavaType getElementType(JavaType javaType) {
+        if (Iterator.class == javaType.getRawClass()) {
+            return javaType.containedType(0);
+        }
+        return isArrayLike(javaType) ? javaType.getContentType() : javaType;
+    }
+
+    private ObjectMapper getAdapterObjectMapper() {
+        if (adapterConverter instanceof MappingJackson2MessageConverter
+                && adapterConverter instanceof GenericMessageAdapterConverter) {
+            return ((MappingJackson2MessageConverter) adapterConverter).getObjectMapper();
+        }
+        return null;
+    }
+
+    private void warmupProducers(List<Object> payloads) {
+        for (Iterator<Object> it = payloads.iterator(); it.hasNext();) {
+            Object payload = it.next();
+            try {
+                for (JmsMessageConverter converter : messageConverters) {
+                    if (converter.canConvertTo(payload) && converter instanceof Jackson2JmsMessageConverter) {
+                        ObjectMapper objectMapper = ((Jackson2JmsMessageConverter) converter).getObjectMapper();
+                        objectMapper.readValue(objectMapper.writeValueAsBytes(payload), payload.getClass());
+                    }
+                }
+            } catch (Exception ex) {
+                LOGGER.debug("Stop warming up {}", payload.getClass(), ex);
+                it.remove();
+            }
+        }
+    }
+
+    private void warmupListeners(List<Type> targetTypes) {
+        ObjectMapper objectMapper = getAdapterObjectMapper();
+        for (Iterator<Type> it = targetTypes.iterator(); it.hasNext();) {
+            Type type = it.next();
+            try {
+                JavaType javaType = objectMapper.constructType(type);
+                String json = objectMapper.writeValueAsString(createPayload(getElementType(javaType).getRawClass()));
+                if (isArrayLike(javaType)) {
+                    json = "[" + json + "]";
+                }
+                Object result = ((GenericMessageAdapterConverter) adapterConverter).fromMessage(
+                        MessageBuilder.withPayload(json.getBytes(UTF8)).build(), type);
+                if (result instanceof Iterator) {
+                    Iterator<?> iterator = (Iterator<?>) result;
+                    while (iterator.hasNext()) {
+                        iterator.next();
+                    }
+                }
+            } catch (Exception ex) {
+                LOGGER.debug("Stop warming up the listener type {}", type, ex);
+                it.remove();
+            }
+        }
+    }
+
+    public void setMessageConverters(List<JmsMessageConverter> messageConverters) {
+        this.messageConverters = messageConverters;
+    }
+
+    /**
+     * The converter of the listener parameters, see {@link Jackson2MessageAdapterConverter}
+     *
+     * @param adapterConverter the converter
+     */
+    public void setAdapterConverter(MessageConverter adapterConverter) {
+        this.adapterConverter = adapterConverter;
+    }
+
+    /**
+     * The packages to scan the {@link Jackson2Converter} classes
+     *
+     * @param basePackages the base packages
+     */
+    public void setBasePackages(String... basePackages) {
+        this.basePackages = basePackages;
+    }
+
+    /**
+     * The time to repeat the conversions, at least one round
+     *
+     * @param warmupTime the warmup time in milliseconds
+     */
+    public void setWarmupTime(long warmupTime) {
+        this.warmupTime = warmupTime;
+    }
+
+    @Override
+    public void setBeanClassLoader(ClassLoader classLoader) {
+        this.beanClassLoader = classLoader;
+    }
+
+}
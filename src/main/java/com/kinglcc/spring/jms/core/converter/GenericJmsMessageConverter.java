@@ -44,6 +44,7 @@ import org.springframework.util.ClassUtils;
  * Generic jms message converter:
  * The default {@link MessageConverter} is {@link SimpleMessageConverter}.
  * Support multi {@link JmsMessageConverter}
+ * The converter is marked by the class name, or the simple name if compact
  * </pre>
  * 
  * @author liaochaochao
@@ -61,6 +62,7 @@ public class GenericJmsMessageConverter implements MessageConverter, BeanClassLo
 
     private MessageConverter defaultMessageConverter = new SimpleMessageConverter();
     private List<JmsMessageConverter> messageConverters = new LinkedList<JmsMessageConverter>();
+    private boolean compactConverterName;
 
     @Override
     public Message toMessage(Object object, Session session) throws JMSException, MessageConversionException {
@@ -80,7 +82,9 @@ public class GenericJmsMessageConverter implements MessageConverter, BeanClassLo
     }
 
     private void setConverterOnMessage(Message message, MessageConverter converter) throws JMSException {
-        message.setStringProperty(CONVERTER_PROP, converter.getClass().getName());
+        Class<?> converterClass = converter.getClass();
+        message.setStringProperty(CONVERTER_PROP,
+                compactConverterName ? converterClass.getSimpleName() : converterClass.getName());
     }
 
     @Override
@@ -110,8 +114,21 @@ public class GenericJmsMessageConverter implements MessageConverter, BeanClassLo
         this.messageConverters = messageConverters;
     }
 
-    protected MessageConverter getConverterByConverterName(String converterName) {
+    /**
+     * Mark the message with the simple name of the converter instead of the class name
+     *
+     * @param compactConverterName use the simple name or not
+     */
+    public void setCompactConverterName(boolean compactConverterName) {
+        this.compactConverterName = compactConverterName;
+    }
 
+    protected MessageConverter getConverterByConverterName(String converterName) {
+        for (JmsMessageConverter converter : messageConverters) {
+            if (converter.getClass().getSimpleName().equals(converterName)) {
+                return converter;
+            }
+        }
         try {
             Class<?> converterClass = ClassUtils.forName(converterName, this.beanClassLoader);
             for (JmsMessageConverter converter : messageConverters) {
@@ -25,6 +25,7 @@ import java.lang.annotation.Target;
  * Jackson2Converter
  * <pre>
  * Use {@link Jackson2JmsMessageConverter}
+ * The compact type id can be declared, see {@link TypeIdRegistry}
  * </pre>
  *
  * @author liaochaochao
@@ -35,4 +36,11 @@ import java.lang.annotation.Target;
 @Documented
 public @interface Jackson2Converter {
 
+    /**
+     * The compact type id, the default is derived from the class name
+     *
+     * @return The type id
+     */
+    String value() default "";
+
 }
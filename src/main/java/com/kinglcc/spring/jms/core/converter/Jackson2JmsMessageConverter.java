@@ -17,6 +17,7 @@ package com.kinglcc.spring.jms.core.converter;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.Serializable;
 import java.io.StringWriter;
@@ -29,6 +30,7 @@ import javax.jms.Message;
 import javax.jms.Session;
 import javax.jms.TextMessage;
 
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.BeanClassLoaderAware;
@@ -41,6 +43,7 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kinglcc.spring.jms.core.claimcheck.ClaimCheck;
 
 /**
  * Jackson2JmsMessageConverter
@@ -48,6 +51,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  * Jackson2 jms message converter:
  * Use Jackson2 to convert java object to {@link javax.jms.Message}.
  * Convert {@link javax.jms.Message} to {@link String}
+ * The type id is the class name, or the compact type id of the {@link TypeIdRegistry}
+ * The oversized body is offloaded by the {@link ClaimCheck}
  * </pre>
  *
  * @author liaochaochao
@@ -67,6 +72,7 @@ public class Jackson2JmsMessageConverter implements JmsMessageConverter, BeanCla
      * The default encoding used for writing to text messages: UTF-8.
      */
     public static final String DEFAULT_ENCODING = "UTF-8";
+    private static final String JSON_ENCODING = "UTF-8";
     private static final String JMS_MESSAGE_ENCODING_PROP = "messageEncoding@";
     private static final String JMS_MESSAGE_TYPE_PROP = "messageTypeId@";
 
@@ -75,6 +81,9 @@ public class Jackson2JmsMessageConverter implements JmsMessageConverter, BeanCla
     private ObjectMapper objectMapper;
     private String encodingPropertyName = JMS_MESSAGE_ENCODING_PROP;
     private String typeIdPropertyName = JMS_MESSAGE_TYPE_PROP;
+    private TypeIdRegistry typeIdRegistry;
+    private boolean compactTypeId;
+    private ClaimCheck claimCheck;
 
     private ClassLoader beanClassLoader;
 
@@ -92,6 +101,10 @@ public class Jackson2JmsMessageConverter implements JmsMessageConverter, BeanCla
         this.objectMapper = objectMapper;
     }
 
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
     /**
      * Specify whether {@link #toMessage(Object, Session)} should marshal to a
      * {@link BytesMessage} or a {@link TextMessage}.
@@ -139,10 +152,41 @@ public class Jackson2JmsMessageConverter implements JmsMessageConverter, BeanCla
         this.typeIdPropertyName = typeIdPropertyName;
     }
 
+    /**
+     * Specify the registry to resolve the compact type id.
+     */
+    public void setTypeIdRegistry(TypeIdRegistry typeIdRegistry) {
+        this.typeIdRegistry = typeIdRegistry;
+    }
+
+    /**
+     * Specify whether to write the compact type id instead of the class name.
+     * <p>Default is false. The type id of both formats is readable, so enable it
+     * after all the receivers are able to resolve the compact type id.
+     */
+    public void setCompactTypeId(boolean compactTypeId) {
+        this.compactTypeId = compactTypeId;
+    }
+
+    /**
+     * Specify the claim check to offload the oversized body.
+     * <p>Default is none, the body is always sent by the message.
+     */
+    public void setClaimCheck(ClaimCheck claimCheck) {
+        this.claimCheck = claimCheck;
+    }
+
     @Override
     public Message toMessage(Object object, Session session) throws JMSException, MessageConversionException {
         Message message;
         try {
+            if (null != this.claimCheck) {
+                message = mapToClaimCheckMessage(object, session, this.objectMapper);
+                if (null != message) {
+                    setTypeIdOnMessage(object, message);
+                    return message;
+                }
+            }
             switch (this.targetType) {
                 case TEXT:
                     message = mapToTextMessage(object, session, this.objectMapper);
@@ -162,7 +206,12 @@ public class Jackson2JmsMessageConverter implements JmsMessageConverter, BeanCla
 
     protected void setTypeIdOnMessage(Object object, Message message) throws JMSException {
         if (this.typeIdPropertyName != null) {
-            String typeId = object.getClass().getCanonicalName();
+            String typeId;
+            if (compactTypeId && null != typeIdRegistry) {
+                typeId = typeIdRegistry.getTypeId(object.getClass());
+            } else {
+                typeId = object.getClass().getCanonicalName();
+            }
             message.setStringProperty(this.typeIdPropertyName, typeId);
         }
     }
@@ -171,6 +220,10 @@ public class Jackson2JmsMessageConverter implements JmsMessageConverter, BeanCla
     public Object fromMessage(Message message) throws JMSException, MessageConversionException {
         try {
             JavaType targetJavaType = getJavaTypeForMessage(message);
+            String reference = null != this.claimCheck ? this.claimCheck.getReference(message) : null;
+            if (null != reference) {
+                return readClaimCheck(reference, targetJavaType);
+            }
             String payload = getPayload(message);
             if (null != targetJavaType) {
                 return this.objectMapper.readValue(payload, targetJavaType);
@@ -181,6 +234,62 @@ public class Jackson2JmsMessageConverter implements JmsMessageConverter, BeanCla
         }
     }
 
+    /**
+     * Map the given object to the message of the claim check if it's oversized,
+     * or to the message of the target type with the serialized body if not,
+     * so the object is serialized only once.
+     * @param object the object to be mapped
+     * @param session current JMS session
+     * @param objectMapper the mapper to use
+     * @return the message, or null if the target type is neither TEXT nor BYTES
+     * @throws JMSException if thrown by JMS methods
+     * @throws IOException in case of I/O errors
+     */
+    protected Message mapToClaimCheckMessage(Object object, Session session, ObjectMapper objectMapper)
+            throws JMSException, IOException {
+
+        byte[] body = objectMapper.writeValueAsBytes(object);
+        if (!this.claimCheck.isOversized(body.length)) {
+            if (MessageType.TEXT == this.targetType) {
+                return session.createTextMessage(new String(body, JSON_ENCODING));
+            }
+            if (MessageType.BYTES == this.targetType) {
+                BytesMessage message = session.createBytesMessage();
+                message.writeBytes(body);
+                if (this.encodingPropertyName != null) {
+                    message.setStringProperty(this.encodingPropertyName, JSON_ENCODING);
+                }
+                return message;
+            }
+            return null;
+        }
+        Message message = MessageType.BYTES == this.targetType ? session.createBytesMessage()
+                : session.createTextMessage();
+        this.claimCheck.checkIn(message, body);
+        return message;
+    }
+
+    /**
+     * Stream the body of the claim check into the object.
+     * @param reference the reference of the body
+     * @param targetJavaType the target type, may be null
+     * @return the object, or the {@link GenericMessage} of the body {@link InputStream} if the type
+     * is unknown, the stream is read and closed by the converter of the listener parameter
+     * @throws JMSException if thrown by JMS methods
+     * @throws IOException in case of I/O errors
+     */
+    protected Object readClaimCheck(String reference, JavaType targetJavaType) throws JMSException, IOException {
+        InputStream in = this.claimCheck.checkOut(reference);
+        if (null == targetJavaType) {
+            return new GenericMessage(in);
+        }
+        try {
+            return this.objectMapper.readValue(in, targetJavaType);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
     /**
      * Map the given object to a {@link TextMessage}.
      * @param object the object to be mapped
@@ -353,7 +462,8 @@ public class Jackson2JmsMessageConverter implements JmsMessageConverter, BeanCla
         }
 
         try {
-            Class<?> typeClass = ClassUtils.forName(typeId, this.beanClassLoader);
+            Class<?> typeClass = null != typeIdRegistry ? typeIdRegistry.resolveType(typeId)
+                    : ClassUtils.forName(typeId, this.beanClassLoader);
             return this.objectMapper.getTypeFactory().constructType(typeClass);
         } catch (Throwable ex) {
             throw new MessageConversionException("Failed to resolve type id [" + typeId + "]", ex);
@@ -16,12 +16,15 @@
 package com.kinglcc.spring.jms.core.converter;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Type;
+import java.util.Iterator;
 
 import org.springframework.messaging.Message;
 import org.springframework.messaging.converter.MappingJackson2MessageConverter;
 import org.springframework.messaging.converter.MessageConversionException;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -29,6 +32,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  * Jackson2MessageAdapterConverter
  * <pre>
  * Use Jackson2 to convert {@link Message}
+ * The JSON array is converted to {@link Iterator} incrementally, see {@link JsonArrayIterator}
+ * The {@link InputStream} payload of the claim check is parsed as a stream and closed
  * </pre>
  * @see GenericMessageAdapterConverter
  * 
@@ -44,8 +49,13 @@ public class Jackson2MessageAdapterConverter extends MappingJackson2MessageConve
         JavaType javaType = objectMapper.getTypeFactory().constructType(targetType, contextClass);
         try {
             Object payload = message.getPayload();
+            if (Iterator.class == javaType.getRawClass()) {
+                return iterate(objectMapper, payload, javaType);
+            }
             if (payload instanceof byte[]) {
                 return objectMapper.readValue((byte[]) payload, javaType);
+            } else if (payload instanceof InputStream) {
+                return objectMapper.readValue((InputStream) payload, javaType);
             } else {
                 return objectMapper.readValue((String) payload, javaType);
             }
@@ -54,6 +64,23 @@ public class Jackson2MessageAdapterConverter extends MappingJackson2MessageConve
         }
     }
 
+    private Iterator<?> iterate(ObjectMapper objectMapper, Object payload, JavaType iteratorType)
+            throws IOException {
+        JavaType elementType = iteratorType.containedType(0);
+        if (null == elementType) {
+            elementType = objectMapper.getTypeFactory().constructType(Object.class);
+        }
+        JsonParser parser;
+        if (payload instanceof byte[]) {
+            parser = objectMapper.getFactory().createParser((byte[]) payload);
+        } else if (payload instanceof InputStream) {
+            parser = objectMapper.getFactory().createParser((InputStream) payload);
+        } else {
+            parser = objectMapper.getFactory().createParser((String) payload);
+        }
+        return new JsonArrayIterator<Object>(parser, objectMapper, elementType);
+    }
+
     @Override
     public Object fromMessage(Message<?> message, Type targetType) {
         return fromMessage(message, targetType, null);
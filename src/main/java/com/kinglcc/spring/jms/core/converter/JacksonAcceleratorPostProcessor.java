@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.converter;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.util.ClassUtils;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kinglcc.spring.jms.JmsException;
+import com.kinglcc.spring.jms.core.delay.JmsDelayQueue;
+import com.kinglcc.spring.jms.core.spool.JmsSpool;
+import com.kinglcc.spring.jms.utils.JsonUtils;
+
+/**
+ * JacksonAcceleratorPostProcessor
+ * <pre>
+ * Register the Jackson afterburner module to every mapper of the starter,
+ * the bean properties of the payloads such as the {@link Jackson2Converter} types
+ * are accessed by the generated bytecode instead of reflection.
+ * The mappers of {@link Jackson2JmsMessageConverter}, {@link Jackson2MessageAdapterConverter},
+ * {@link JsonUtils}, {@link JmsSpool} and {@link JmsDelayQueue} are accelerated.
+ * The jackson-module-afterburner must be in the classpath.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月24日 下午4:38:10
+ */
+public class JacksonAcceleratorPostProcessor implements BeanPostProcessor, BeanClassLoaderAware, InitializingBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JacksonAcceleratorPostProcessor.class);
+
+    private static final String AFTERBURNER_MODULE = "com.fasterxml.jackson.module.afterburner.AfterburnerModule";
+
+    private final Set<ObjectMapper> accelerated =
+            Collections.newSetFromMap(new IdentityHashMap<ObjectMapper, Boolean>());
+    private ClassLoader beanClassLoader = ClassUtils.getDefaultClassLoader();
+    private Module module;
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+        if (bean instanceof Jackson2JmsMessageConverter) {
+            accelerate(((Jackson2JmsMessageConverter) bean).getObjectMapper());
+        } else if (bean instanceof MappingJackson2MessageConverter) {
+            accelerate(((MappingJackson2MessageConverter) bean).getObjectMapper());
+        } else if (bean instanceof JmsSpool) {
+            accelerate(((JmsSpool) bean).getObjectMapper());
+        } else if (bean instanceof JmsDelayQueue) {
+            accelerate(((JmsDelayQueue) bean).getObjectMapper());
+        }
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        return bean;
+    }
+
+    private synchronized void accelerate(ObjectMapper objectMapper) {
+        if (null != objectMapper && accelerated.add(objectMapper)) {
+            objectMapper.registerModule(module);
+        }
+    }
+
+    @Override
+    public void setBeanClassLoader(ClassLoader classLoader) {
+        this.beanClassLoader = classLoader;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!ClassUtils.isPresent(AFTERBURNER_MODULE, beanClassLoader)) {
+            throw new JmsException("NOT FOUND the jackson-module-afterburner in the classpath");
+        }
+        module = (Module) BeanUtils.instantiate(ClassUtils.resolveClassName(AFTERBURNER_MODULE, beanClassLoader));
+        JsonUtils.registerModule(module);
+        LOGGER.info("The jackson mappers are accelerated by the {}", module.getModuleName());
+    }
+
+}
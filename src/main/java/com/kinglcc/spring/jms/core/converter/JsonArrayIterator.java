@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.converter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.io.IOUtils;
+import org.springframework.messaging.converter.MessageConversionException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * JsonArrayIterator
+ * <pre>
+ * Iterate the elements of a JSON array by an incremental parser,
+ * each element is read only when {@link #next()} is called,
+ * so the whole array is never materialized.
+ * The iterator can be iterated only once, and the parser is closed at the end.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月22日 上午10:18:25
+ */
+public class JsonArrayIterator<T> implements Iterator<T>, Closeable {
+
+    private final JsonParser parser;
+    private final ObjectMapper objectMapper;
+    private final JavaType elementType;
+
+    private JsonToken nextToken;
+
+    public JsonArrayIterator(JsonParser parser, ObjectMapper objectMapper, JavaType elementType)
+            throws IOException {
+        this.parser = parser;
+        this.objectMapper = objectMapper;
+        this.elementType = elementType;
+        JsonToken token = parser.nextToken();
+        if (JsonToken.VALUE_NULL == token || null == token) {
+            close();
+        } else if (JsonToken.START_ARRAY != token) {
+            close();
+            throw new MessageConversionException("The JSON payload is not an array, but " + token, null);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (parser.isClosed()) {
+            return false;
+        }
+        if (null == nextToken) {
+            try {
+                nextToken = parser.nextToken();
+            } catch (IOException ex) {
+                throw new MessageConversionException("Could not read JSON: " + ex.getMessage(), ex);
+            }
+            if (null == nextToken || JsonToken.END_ARRAY == nextToken) {
+                close();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        nextToken = null;
+        try {
+            return objectMapper.readValue(parser, elementType);
+        } catch (IOException ex) {
+            close();
+            throw new MessageConversionException("Could not read JSON: " + ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("remove");
+    }
+
+    @Override
+    public void close() {
+        IOUtils.closeQuietly(parser);
+    }
+
+}
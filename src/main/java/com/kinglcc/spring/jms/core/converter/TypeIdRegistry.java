@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.converter;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.util.ClassUtils;
+
+import com.kinglcc.spring.jms.JmsException;
+
+/**
+ * TypeIdRegistry
+ * <pre>
+ * The registry of the compact type ids of the {@link Jackson2Converter} classes.
+ * The type id is declared by {@link Jackson2Converter#value()}, or derived from the
+ * CRC32 of the class name, prefixed with {@link #DERIVED_PREFIX}.
+ * The classes are registered by scanning the base packages, by the listener methods,
+ * and by sending. The unknown type id is resolved as a class name, so the messages
+ * of the old format are still readable.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月18日 下午2:05:47
+ */
+public class TypeIdRegistry implements BeanClassLoaderAware, InitializingBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TypeIdRegistry.class);
+
+    public static final String DERIVED_PREFIX = "~";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final ConcurrentMap<String, Class<?>> typesById = new ConcurrentHashMap<String, Class<?>>();
+    private final ConcurrentMap<Class<?>, String> idsByType = new ConcurrentHashMap<Class<?>, String>();
+
+    private String[] basePackages = new String[0];
+    private ClassLoader beanClassLoader;
+
+    /**
+     * Register the class if it's annotated with {@link Jackson2Converter}
+     *
+     * @param type the class
+     * @return the type id, null if the class is not annotated
+     */
+    public String register(Class<?> type) {
+        String typeId = idsByType.get(type);
+        if (null != typeId) {
+            return typeId;
+        }
+        Jackson2Converter converter = type.getAnnotation(Jackson2Converter.class);
+        if (null == converter) {
+            return null;
+        }
+        typeId = StringUtils.isNotBlank(converter.value()) ? converter.value() : deriveTypeId(type);
+        Class<?> existing = typesById.putIfAbsent(typeId, type);
+        if (null != existing && existing != type) {
+            throw new JmsException(String.format("The type id (%s) of %s is already used by %s", typeId,
+                    type.getName(), existing.getName()));
+        }
+        idsByType.put(type, typeId);
+        LOGGER.debug("Register type id {} of {}", typeId, type.getName());
+        return typeId;
+    }
+
+    /**
+     * Get the compact type id of the class
+     *
+     * @param type the class
+     * @return the type id, or the canonical name if the class is not annotated
+     */
+    public String getTypeId(Class<?> type) {
+        String typeId = register(type);
+        return null != typeId ? typeId : type.getCanonicalName();
+    }
+
+    /**
+     * Resolve the class of the type id, or the class name of the old format
+     *
+     * @param typeId the type id or the class name
+     * @return the class
+     * @throws ClassNotFoundException if the class can't be resolved
+     */
+    public Class<?> resolveType(String typeId) throws ClassNotFoundException {
+        Class<?> type = typesById.get(typeId);
+        if (null != type) {
+            return type;
+        }
+        return ClassUtils.forName(typeId, beanClassLoader);
+    }
+
+    private static String deriveTypeId(Class<?> type) {
+        CRC32 crc = new CRC32();
+        crc.update(type.getCanonicalName().getBytes(UTF8));
+        return DERIVED_PREFIX + Long.toString(crc.getValue(), Character.MAX_RADIX);
+    }
+
+    /**
+     * The packages to scan the {@link Jackson2Converter} classes
+     *
+     * @param basePackages the base packages
+     */
+    public void setBasePackages(String... basePackages) {
+        this.basePackages = basePackages;
+    }
+
+    @Override
+    public void setBeanClassLoader(ClassLoader classLoader) {
+        this.beanClassLoader = classLoader;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws ClassNotFoundException {
+        if (basePackages.length == 0) {
+            return;
+        }
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(new AnnotationTypeFilter(Jackson2Converter.class));
+        for (String basePackage : basePackages) {
+            if (StringUtils.isBlank(basePackage)) {
+                continue;
+            }
+            for (BeanDefinition candidate : scanner.findCandidateComponents(basePackage.trim())) {
+                register(ClassUtils.forName(candidate.getBeanClassName(), beanClassLoader));
+            }
+        }
+        LOGGER.info("Registered {} type ids", idsByType.size());
+    }
+
+}
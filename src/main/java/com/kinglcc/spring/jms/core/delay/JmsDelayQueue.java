@@ -0,0 +1,419 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.delay;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kinglcc.spring.jms.JmsException;
+import com.kinglcc.spring.jms.core.spool.MappedJournal;
+import com.kinglcc.spring.jms.core.spool.SpoolRecord;
+
+/**
+ * JmsDelayQueue
+ * <pre>
+ * The delayed messages of {@link com.kinglcc.spring.jms.JmsService} in a {@link TimingWheel},
+ * a single thread turns the wheel every tick and sends the due messages by the {@link Sender}.
+ * The thread is started with the context, after all beans are ready.
+ * A failed message is scheduled again after the retry interval.
+ * If the directory is set, the messages are appended to a {@link MappedJournal} with a sequence,
+ * and a sent marker of the sequence is appended when the message is sent, so only the messages
+ * not sent are loaded again after restart. The checkpoint is moved past the sent messages and
+ * the markers. If the journal holds much more records than the pending messages, for a long
+ * delay holds the checkpoint, the pending messages are appended again at the end of the journal
+ * and the checkpoint is moved past the old records.
+ * A message sent just before a crash may be sent again if its marker is not written yet.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月25日 下午5:48:20
+ */
+@ManagedResource(description = "The delayed messages of JmsService")
+public class JmsDelayQueue implements SmartLifecycle, InitializingBean, DisposableBean, BeanClassLoaderAware,
+        Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JmsDelayQueue.class);
+
+    private static final byte SCHEDULED = 'S';
+    private static final byte SENT = 'D';
+    private static final int HEADER_SIZE = 9;
+    private static final int REPLAY_BATCH_SIZE = 1000;
+    private static final int CHECKPOINT_BATCH_SIZE = 10000;
+    private static final int COMPACT_THRESHOLD = 10000;
+
+    private final AtomicLong sentMessages = new AtomicLong();
+    private final AtomicLong failedSends = new AtomicLong();
+
+    private TimingWheel<Entry> wheel;
+    private MappedJournal journal;
+    private final Set<Long> pendingSequences = new HashSet<Long>();
+    private long nextSequence;
+    private long compactRemaining;
+
+    private File directory;
+    private int segmentSize = 64 * 1024 * 1024;
+    private long tickDuration = 100;
+    private long retryInterval = 1000;
+    private ClassLoader beanClassLoader;
+    private ObjectMapper objectMapper = SpoolRecord.createObjectMapper();
+
+    private volatile Sender sender;
+    private volatile boolean running;
+    private Thread ticker;
+
+    /**
+     * Schedule the message
+     *
+     * @param destinationName the destination name
+     * @param messageGroup the message group, may be null
+     * @param payload the payload
+     * @param deliveryTime the time to send in milliseconds
+     */
+    public void schedule(String destinationName, String messageGroup, Object payload, long deliveryTime) {
+        SpoolRecord record = new SpoolRecord(deliveryTime, destinationName, messageGroup, null, payload);
+        synchronized (this) {
+            long sequence = nextSequence++;
+            if (null != journal) {
+                try {
+                    journal.append(toJournalRecord(SCHEDULED, sequence, record.toBytes(objectMapper)));
+                } catch (IOException ex) {
+                    throw new JmsException("Journal delayed message to " + destinationName + " error", ex);
+                }
+                pendingSequences.add(sequence);
+            }
+            wheel.add(new Entry(record, sequence), deliveryTime);
+        }
+    }
+
+    /**
+     * The sender of the due messages, the messages are sent after the queue is started
+     *
+     * @param sender the sender
+     */
+    public void setSender(Sender sender) {
+        this.sender = sender;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        if (null == sender) {
+            LOGGER.warn("NO sender of the delayed messages, the queue is not started");
+            return;
+        }
+        running = true;
+        ticker = new Thread(this, "jmsDelayQueue");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    @Override
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            running = false;
+            thread = ticker;
+            ticker = null;
+        }
+        if (null != thread) {
+            try {
+                thread.join(tickDuration * 10);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void stop(Runnable callback) {
+        stop();
+        callback.run();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return true;
+    }
+
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            List<Entry> entries;
+            synchronized (this) {
+                entries = wheel.advance(System.currentTimeMillis());
+            }
+            for (Entry entry : entries) {
+                send(entry);
+            }
+            checkpoint();
+            try {
+                Thread.sleep(tickDuration);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+        }
+    }
+
+    private void send(Entry entry) {
+        SpoolRecord record = entry.record;
+        try {
+            sender.send(record.getDestinationName(), record.getMessageGroup(), record.getPayload());
+            sentMessages.incrementAndGet();
+            markSent(entry.sequence);
+        } catch (Exception ex) {
+            failedSends.incrementAndGet();
+            LOGGER.warn("Send delayed message to {} error, retry after {}ms", record.getDestinationName(),
+                    retryInterval, ex);
+            synchronized (this) {
+                wheel.add(entry, System.currentTimeMillis() + retryInterval);
+            }
+        }
+    }
+
+    private synchronized void markSent(long sequence) {
+        if (null == journal) {
+            return;
+        }
+        pendingSequences.remove(sequence);
+        try {
+            journal.append(toJournalRecord(SENT, sequence, null));
+        } catch (IOException ex) {
+            LOGGER.warn("Journal the sent marker of the delayed message {} error", sequence, ex);
+        }
+    }
+
+    private synchronized void checkpoint() {
+        if (null == journal) {
+            return;
+        }
+        try {
+            if (compactRemaining == 0
+                    && journal.getPendingRecords() > 2L * pendingSequences.size() + COMPACT_THRESHOLD) {
+                compactRemaining = journal.getPendingRecords();
+            }
+            journal.rewind();
+            for (int i = 0; i < CHECKPOINT_BATCH_SIZE; i++) {
+                List<byte[]> records = journal.read(1);
+                if (records.isEmpty()) {
+                    break;
+                }
+                byte[] data = records.get(0);
+                if (data[0] == SCHEDULED && pendingSequences.contains(sequenceOf(data))) {
+                    if (compactRemaining <= 0) {
+                        journal.rewind();
+                        break;
+                    }
+                    journal.append(data);
+                }
+                journal.commit();
+                if (compactRemaining > 0) {
+                    compactRemaining--;
+                }
+            }
+        } catch (IOException ex) {
+            LOGGER.error("Checkpoint delayed message journal error", ex);
+        }
+    }
+
+    private void replay() throws IOException {
+        Map<Long, byte[]> scheduled = new LinkedHashMap<Long, byte[]>();
+        Set<Long> sent = new HashSet<Long>();
+        while (true) {
+            List<byte[]> records = journal.read(REPLAY_BATCH_SIZE);
+            if (records.isEmpty()) {
+                break;
+            }
+            for (byte[] data : records) {
+                long sequence = sequenceOf(data);
+                nextSequence = Math.max(nextSequence, sequence + 1);
+                if (data[0] == SCHEDULED) {
+                    scheduled.put(sequence, data);
+                } else {
+                    sent.add(sequence);
+                }
+            }
+        }
+        journal.rewind();
+        for (Map.Entry<Long, byte[]> entry : scheduled.entrySet()) {
+            long sequence = entry.getKey();
+            if (sent.contains(sequence)) {
+                continue;
+            }
+            byte[] data = entry.getValue();
+            SpoolRecord record;
+            try {
+                record = SpoolRecord.fromBytes(Arrays.copyOfRange(data, HEADER_SIZE, data.length), objectMapper,
+                        beanClassLoader);
+            } catch (IOException | RuntimeException ex) {
+                LOGGER.error("Drop the unreadable delayed message {} of the journal", sequence, ex);
+                journal.append(toJournalRecord(SENT, sequence, null));
+                continue;
+            }
+            pendingSequences.add(sequence);
+            wheel.add(new Entry(record, sequence), record.getTimestamp());
+        }
+        LOGGER.info("Loaded {} delayed messages from {}", pendingSequences.size(), directory);
+    }
+
+    private static byte[] toJournalRecord(byte type, long sequence, byte[] record) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + (null == record ? 0 : record.length));
+        buffer.put(type).putLong(sequence);
+        if (null != record) {
+            buffer.put(record);
+        }
+        return buffer.array();
+    }
+
+    private static long sequenceOf(byte[] data) {
+        return ByteBuffer.wrap(data).getLong(1);
+    }
+
+    @ManagedAttribute(description = "The number of messages waiting for the delivery time")
+    public synchronized long getPendingMessages() {
+        return wheel.size();
+    }
+
+    @ManagedAttribute(description = "The number of delayed messages sent")
+    public long getSentMessages() {
+        return sentMessages.get();
+    }
+
+    @ManagedAttribute(description = "The number of failed sends")
+    public long getFailedSends() {
+        return failedSends.get();
+    }
+
+    @ManagedAttribute(description = "The number of records in the journal, including the sent ones")
+    public synchronized long getJournalRecords() {
+        return null == journal ? 0 : journal.getPendingRecords();
+    }
+
+    /**
+     * The directory of the journal, the messages are kept only in memory if not set
+     *
+     * @param directory the directory
+     */
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * The tick of the wheel, the messages are sent at most one tick late
+     *
+     * @param tickDuration the tick in milliseconds
+     */
+    public void setTickDuration(long tickDuration) {
+        this.tickDuration = tickDuration;
+    }
+
+    public void setRetryInterval(long retryInterval) {
+        this.retryInterval = retryInterval;
+    }
+
+    /**
+     * The mapper of the journaled payloads, see {@link SpoolRecord}
+     *
+     * @param objectMapper the mapper
+     */
+    public void setObjectMapper(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    @Override
+    public void setBeanClassLoader(ClassLoader classLoader) {
+        this.beanClassLoader = classLoader;
+    }
+
+    @Override
+    public synchronized void afterPropertiesSet() throws IOException {
+        wheel = new TimingWheel<Entry>(tickDuration, System.currentTimeMillis());
+        if (null != directory) {
+            journal = new MappedJournal(directory, segmentSize);
+            journal.open();
+            replay();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        stop();
+        synchronized (this) {
+            if (null != journal) {
+                journal.close();
+            }
+        }
+    }
+
+    /**
+     * The sender of the due messages
+     */
+    public interface Sender {
+
+        void send(String destinationName, String messageGroup, Object payload);
+
+    }
+
+    private static class Entry {
+
+        private final SpoolRecord record;
+        private final long sequence;
+
+        Entry(SpoolRecord record, long sequence) {
+            this.record = record;
+            this.sequence = sequence;
+        }
+    }
+
+}
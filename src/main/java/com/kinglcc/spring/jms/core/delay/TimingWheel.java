@@ -0,0 +1,179 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.delay;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.springframework.util.Assert;
+
+/**
+ * TimingWheel
+ * <pre>
+ * A hierarchical hashed timing wheel of {@value #LEVELS} levels, {@value #WHEEL_SIZE} slots each.
+ * A slot of the level n spans 256^n ticks, so the wheels cover 256^4 ticks, the later deadlines
+ * are parked in the farthest slot and placed again when it's cascaded.
+ * The item is appended to the list of its slot in O(1), and the slot of a higher level is
+ * cascaded to the lower levels when the lower wheel turns around.
+ * The items of the same tick expire in the order added, a cascaded item lands behind the later
+ * items placed directly in the lower slot, so such a slot is sorted by the add sequence on expiry.
+ * Not thread-safe, the caller should synchronize.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月25日 下午5:12:36
+ */
+public class TimingWheel<T> {
+
+    private static final int WHEEL_BITS = 8;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+    private static final long MAX_TICKS = 1L << (WHEEL_BITS * LEVELS);
+
+    private final long tickDuration;
+    private final long startTime;
+    private final Node[][] heads;
+    private final Node[][] tails;
+
+    private long currentTick;
+    private long sequence;
+    private int size;
+
+    public TimingWheel(long tickDuration, long startTime) {
+        Assert.isTrue(tickDuration > 0, "'tickDuration' must be positive");
+        this.tickDuration = tickDuration;
+        this.startTime = startTime;
+        this.heads = new Node[LEVELS][WHEEL_SIZE];
+        this.tails = new Node[LEVELS][WHEEL_SIZE];
+    }
+
+    /**
+     * Add the item, it expires at the first tick not before the deadline
+     *
+     * @param item the item
+     * @param deadline the deadline in milliseconds
+     */
+    public void add(T item, long deadline) {
+        long tick = (deadline - startTime + tickDuration - 1) / tickDuration;
+        place(new Node(item, Math.max(tick, currentTick + 1), sequence++));
+        size++;
+    }
+
+    /**
+     * Turn the wheels to the time
+     *
+     * @param now the time in milliseconds
+     * @return the expired items
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> advance(long now) {
+        long targetTick = (now - startTime) / tickDuration;
+        List<T> expired = new ArrayList<T>();
+        while (currentTick < targetTick) {
+            currentTick++;
+            for (int level = 1; level < LEVELS; level++) {
+                if ((currentTick & ((1L << (WHEEL_BITS * level)) - 1)) != 0) {
+                    break;
+                }
+                cascade(level, (int) (currentTick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+            }
+            int slot = (int) currentTick & WHEEL_MASK;
+            for (Node node = inSequence(heads[0][slot]); null != node; node = node.next) {
+                expired.add((T) node.item);
+            }
+            heads[0][slot] = null;
+            tails[0][slot] = null;
+        }
+        size -= expired.size();
+        return expired;
+    }
+
+    private void cascade(int level, int slot) {
+        Node node = heads[level][slot];
+        heads[level][slot] = null;
+        tails[level][slot] = null;
+        while (null != node) {
+            Node next = node.next;
+            node.next = null;
+            place(node);
+            node = next;
+        }
+    }
+
+    private static Node inSequence(Node head) {
+        Node node = head;
+        while (null != node && (null == node.next || node.sequence < node.next.sequence)) {
+            node = node.next;
+        }
+        if (null == node) {
+            return head;
+        }
+        List<Node> nodes = new ArrayList<Node>();
+        for (node = head; null != node; node = node.next) {
+            nodes.add(node);
+        }
+        Collections.sort(nodes, new Comparator<Node>() {
+
+            @Override
+            public int compare(Node o1, Node o2) {
+                return o1.sequence < o2.sequence ? -1 : 1;
+            }
+        });
+        for (int i = 0; i < nodes.size(); i++) {
+            nodes.get(i).next = i + 1 < nodes.size() ? nodes.get(i + 1) : null;
+        }
+        return nodes.get(0);
+    }
+
+    private void place(Node node) {
+        long delta = node.tick - currentTick;
+        long slotTick = delta >= MAX_TICKS ? currentTick + MAX_TICKS - 1 : Math.max(node.tick, currentTick);
+        delta = slotTick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (WHEEL_BITS * (level + 1))) {
+            level++;
+        }
+        int slot = (int) (slotTick >>> (WHEEL_BITS * level)) & WHEEL_MASK;
+        if (null == tails[level][slot]) {
+            heads[level][slot] = node;
+        } else {
+            tails[level][slot].next = node;
+        }
+        tails[level][slot] = node;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static class Node {
+
+        private final Object item;
+        private final long tick;
+        private final long sequence;
+        private Node next;
+
+        Node(Object item, long tick, long sequence) {
+            this.item = item;
+            this.tick = tick;
+            this.sequence = sequence;
+        }
+    }
+
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.lease;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import com.kinglcc.spring.jms.core.listener.DynamicMessageListenerContainer;
+import com.kinglcc.spring.jms.utils.InetUtils;
+
+/**
+ * ClientIdLeaseKeeper
+ * <pre>
+ * Keep the client id leases of the durable subscribers by heartbeats.
+ * The container starts only when the lease of its client id is acquired, otherwise it stands by,
+ * and takes over the durable subscription once the lease of the dead owner expires.
+ * The container which lost its lease is shut down, so its client id is free for the new owner.
+ * The lease is treated as lost a heartbeat before it expires if the store is unavailable.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月23日 下午3:05:51
+ */
+public class ClientIdLeaseKeeper implements InitializingBean, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClientIdLeaseKeeper.class);
+
+    private final ClientIdLeaseManager leaseManager;
+    private final Map<String, DynamicMessageListenerContainer> containers =
+            new ConcurrentHashMap<String, DynamicMessageListenerContainer>();
+    private final Map<String, Long> renewTimes = new ConcurrentHashMap<String, Long>();
+
+    private String owner = InetUtils.getLocalHostName() + "-" + UUID.randomUUID();
+    private long leaseTime = 10000;
+    private long heartbeatInterval = 3000;
+    private ScheduledExecutorService scheduler;
+
+    public ClientIdLeaseKeeper(ClientIdLeaseManager leaseManager) {
+        this.leaseManager = leaseManager;
+    }
+
+    public void register(DynamicMessageListenerContainer container) {
+        containers.put(container.getClientId(), container);
+        container.setClientIdLeaseKeeper(this);
+    }
+
+    public void unregister(String clientId) {
+        containers.remove(clientId);
+        release(clientId);
+    }
+
+    /**
+     * Acquire or renew the lease of the client id
+     *
+     * @param clientId the client id
+     * @return true if the lease is held
+     */
+    public boolean tryAcquire(String clientId) {
+        long now = System.currentTimeMillis();
+        try {
+            if (leaseManager.acquire(clientId, owner, leaseTime)) {
+                renewTimes.put(clientId, now);
+                return true;
+            }
+        } catch (RuntimeException ex) {
+            LOGGER.warn("Could not renew the lease of the client id {}", clientId, ex);
+            Long renewTime = renewTimes.get(clientId);
+            if (null != renewTime && now - renewTime < leaseTime - heartbeatInterval) {
+                return true;
+            }
+        }
+        renewTimes.remove(clientId);
+        return false;
+    }
+
+    public void release(String clientId) {
+        if (null == renewTimes.remove(clientId)) {
+            return;
+        }
+        try {
+            leaseManager.release(clientId, owner);
+        } catch (RuntimeException ex) {
+            LOGGER.warn("Could not release the lease of the client id {}", clientId, ex);
+        }
+    }
+
+    public boolean isHeld(String clientId) {
+        return renewTimes.containsKey(clientId);
+    }
+
+    private void heartbeat() {
+        for (Map.Entry<String, DynamicMessageListenerContainer> entry : containers.entrySet()) {
+            String clientId = entry.getKey();
+            DynamicMessageListenerContainer container = entry.getValue();
+            try {
+                if (container.isStandby()) {
+                    if (tryAcquire(clientId)) {
+                        LOGGER.info("Acquired the lease of the client id {}, take over the subscription", clientId);
+                        container.takeOver();
+                    }
+                } else if (isHeld(clientId) && !tryAcquire(clientId)) {
+                    LOGGER.warn("Lost the lease of the client id {}, the container stands by", clientId);
+                    container.standBy();
+                }
+            } catch (RuntimeException ex) {
+                LOGGER.error("Failed to keep the lease of the client id {}", clientId, ex);
+            }
+        }
+    }
+
+    /**
+     * The owner of the leases, unique for each node
+     *
+     * @param owner the owner
+     */
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * The lease time, the standby takes over within the lease time after the owner died
+     *
+     * @param leaseTime the lease time in milliseconds
+     */
+    public void setLeaseTime(long leaseTime) {
+        this.leaseTime = leaseTime;
+    }
+
+    /**
+     * The interval of the heartbeats, should be far less than the lease time
+     *
+     * @param heartbeatInterval the interval in milliseconds
+     */
+    public void setHeartbeatInterval(long heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("jmsClientIdLease-"));
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                heartbeat();
+            }
+        }, heartbeatInterval, heartbeatInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (null != scheduler) {
+            scheduler.shutdownNow();
+        }
+        for (String clientId : renewTimes.keySet()) {
+            release(clientId);
+        }
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.lease;
+
+/**
+ * ClientIdLeaseManager
+ * <pre>
+ * The store of the client id leases. Only the owner of the lease connects with the client id,
+ * the lease expires unless it's renewed by the owner, then a standby can acquire it.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月23日 下午2:12:40
+ */
+public interface ClientIdLeaseManager {
+
+    /**
+     * Acquire the lease of the client id, or renew it if it's owned by the owner
+     *
+     * @param clientId the client id
+     * @param owner the owner of the lease
+     * @param leaseTime the lease time in milliseconds
+     * @return true if the lease is owned by the owner
+     */
+    boolean acquire(String clientId, String owner, long leaseTime);
+
+    /**
+     * Release the lease of the client id if it's owned by the owner
+     *
+     * @param clientId the client id
+     * @param owner the owner of the lease
+     */
+    void release(String clientId, String owner);
+
+}
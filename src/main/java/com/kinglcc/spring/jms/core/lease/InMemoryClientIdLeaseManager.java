@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.lease;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * InMemoryClientIdLeaseManager
+ * <pre>
+ * The {@link ClientIdLeaseManager} of a single node, the leases are kept in memory.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月23日 下午2:20:16
+ */
+public class InMemoryClientIdLeaseManager implements ClientIdLeaseManager {
+
+    private final Map<String, Lease> leases = new HashMap<String, Lease>();
+
+    @Override
+    public synchronized boolean acquire(String clientId, String owner, long leaseTime) {
+        long now = System.currentTimeMillis();
+        Lease lease = leases.get(clientId);
+        if (null != lease && lease.expireTime > now && !lease.owner.equals(owner)) {
+            return false;
+        }
+        leases.put(clientId, new Lease(owner, now + leaseTime));
+        return true;
+    }
+
+    @Override
+    public synchronized void release(String clientId, String owner) {
+        Lease lease = leases.get(clientId);
+        if (null != lease && lease.owner.equals(owner)) {
+            leases.remove(clientId);
+        }
+    }
+
+    private static class Lease {
+
+        private final String owner;
+        private final long expireTime;
+
+        Lease(String owner, long expireTime) {
+            this.owner = owner;
+            this.expireTime = expireTime;
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.lease;
+
+import java.util.Collections;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+/**
+ * RedisClientIdLeaseManager
+ * <pre>
+ * The {@link ClientIdLeaseManager} shared by the nodes in redis.
+ * The lease is a key of the owner with the lease time as the expiration,
+ * it's acquired, renewed and released atomically by the lua scripts.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月23日 下午2:31:05
+ */
+public class RedisClientIdLeaseManager implements ClientIdLeaseManager {
+
+    private static final String KEY_PREFIX = "jms:clientIdLease:";
+
+    private static final RedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<Long>(
+            "local owner = redis.call('GET', KEYS[1]) "
+            + "if owner == false or owner == ARGV[1] then "
+            + "redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2]) return 1 end "
+            + "return 0", Long.class);
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<Long>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end "
+            + "return 0", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public RedisClientIdLeaseManager(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    @Override
+    public boolean acquire(String clientId, String owner, long leaseTime) {
+        Long result = stringRedisTemplate.execute(ACQUIRE_SCRIPT, Collections.singletonList(KEY_PREFIX + clientId),
+                owner, String.valueOf(leaseTime));
+        return null != result && result == 1L;
+    }
+
+    @Override
+    public void release(String clientId, String owner) {
+        stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(KEY_PREFIX + clientId), owner);
+    }
+
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.listener;
+
+import java.lang.reflect.Method;
+import java.util.Enumeration;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.jms.BytesMessage;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MapMessage;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.ObjectMessage;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.jms.support.destination.DestinationResolver;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * DelayedRetryHandler
+ * <pre>
+ * Handle the failed message of {@link JmsRetry}.
+ * A copy of the message is sent to the source queue in the consumer session, with the
+ * delivery delay of the exponential backoff and the {@link #RETRY_ATTEMPTS_PROP}.
+ * When the session is transacted, the copy is committed with the consumption of the
+ * failed message, so the message is never lost or duplicated by the retry.
+ * The delay is set by the JMS 2.0 delivery delay if the provider supports it, and by
+ * the delay property of the broker scheduler (AMQ_SCHEDULED_DELAY of ActiveMQ by default).
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月18日 上午10:40:21
+ */
+public class DelayedRetryHandler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DelayedRetryHandler.class);
+
+    public static final String RETRY_ATTEMPTS_PROP = "retryAttempts";
+    public static final String RETRY_ERROR_PROP = "retryLastError";
+    public static final String DEFAULT_DELAY_PROP = "AMQ_SCHEDULED_DELAY";
+
+    private static final String DEAD_LETTER_PREFIX = "DLQ.";
+    private static final String PROVIDER_PROP_PREFIX = "JMSX";
+    private static final int MAX_ERROR_LENGTH = 256;
+    private static final Method SET_DELIVERY_DELAY =
+            ReflectionUtils.findMethod(MessageProducer.class, "setDeliveryDelay", long.class);
+
+    private final int maxAttempts;
+    private final long initialInterval;
+    private final double multiplier;
+    private final long maxInterval;
+    private final double jitter;
+    private final String deadLetter;
+    private String delayProperty = DEFAULT_DELAY_PROP;
+
+    public DelayedRetryHandler(JmsRetry retry, String queueName) {
+        this.maxAttempts = Math.max(1, retry.maxAttempts());
+        this.initialInterval = retry.initialInterval();
+        this.multiplier = retry.multiplier();
+        this.maxInterval = retry.maxInterval();
+        this.jitter = retry.jitter();
+        this.deadLetter = StringUtils.isNotBlank(retry.deadLetter()) ? retry.deadLetter()
+                : DEAD_LETTER_PREFIX + queueName;
+    }
+
+    /**
+     * Send the failed message again with delay, or to the dead letter queue
+     *
+     * @param session the consumer session
+     * @param message the failed message
+     * @param failure the failure of the listener
+     * @param destinationResolver the resolver of the dead letter queue
+     * @return true if the failed message is handled, false if the session should be rolled back
+     */
+    public boolean handleFailure(Session session, Message message, Throwable failure,
+            DestinationResolver destinationResolver) {
+        try {
+            int attempts = message.propertyExists(RETRY_ATTEMPTS_PROP)
+                    ? message.getIntProperty(RETRY_ATTEMPTS_PROP) + 1 : 1;
+            Message copy = copyMessage(session, message);
+            if (null == copy) {
+                return false;
+            }
+            copy.setIntProperty(RETRY_ATTEMPTS_PROP, attempts);
+            copy.setStringProperty(RETRY_ERROR_PROP, StringUtils.abbreviate(rootCause(failure), MAX_ERROR_LENGTH));
+            if (attempts >= maxAttempts) {
+                LOGGER.warn("Message {} failed after {} attempts, send to {}", message.getJMSMessageID(), attempts,
+                        deadLetter, failure);
+                Destination destination = destinationResolver.resolveDestinationName(session, deadLetter, false);
+                send(session, destination, copy, message, 0);
+            } else {
+                long delay = backoff(attempts);
+                LOGGER.info("Message {} failed at attempt {}, retry after {}ms: {}", message.getJMSMessageID(),
+                        attempts, delay, failure.getMessage());
+                if (StringUtils.isNotBlank(delayProperty)) {
+                    copy.setLongProperty(delayProperty, delay);
+                }
+                send(session, message.getJMSDestination(), copy, message, delay);
+            }
+            return true;
+        } catch (JMSException ex) {
+            LOGGER.error("Failed to retry the message, roll back instead", ex);
+            return false;
+        }
+    }
+
+    long backoff(int attempts) {
+        double delay = initialInterval * Math.pow(multiplier, attempts - 1);
+        delay = Math.min(delay, maxInterval);
+        if (jitter > 0) {
+            delay = delay * (1 + jitter * (ThreadLocalRandom.current().nextDouble() * 2 - 1));
+        }
+        return Math.max(0, (long) delay);
+    }
+
+    private void send(Session session, Destination destination, Message copy, Message source, long delay)
+            throws JMSException {
+        MessageProducer producer = session.createProducer(destination);
+        try {
+            if (delay > 0 && null != SET_DELIVERY_DELAY) {
+                try {
+                    SET_DELIVERY_DELAY.invoke(producer, delay);
+                } catch (Throwable ex) {
+                    LOGGER.debug("The JMS provider doesn't support the delivery delay", ex);
+                }
+            }
+            producer.send(copy, source.getJMSDeliveryMode(), source.getJMSPriority(), Message.DEFAULT_TIME_TO_LIVE);
+        } finally {
+            JmsUtils.closeMessageProducer(producer);
+        }
+    }
+
+    private Message copyMessage(Session session, Message message) throws JMSException {
+        Message copy;
+        if (message instanceof TextMessage) {
+            copy = session.createTextMessage(((TextMessage) message).getText());
+        } else if (message instanceof BytesMessage) {
+            BytesMessage source = (BytesMessage) message;
+            source.reset();
+            byte[] body = new byte[(int) source.getBodyLength()];
+            source.readBytes(body);
+            BytesMessage bytesMessage = session.createBytesMessage();
+            bytesMessage.writeBytes(body);
+            copy = bytesMessage;
+        } else if (message instanceof ObjectMessage) {
+            copy = session.createObjectMessage(((ObjectMessage) message).getObject());
+        } else if (message instanceof MapMessage) {
+            MapMessage source = (MapMessage) message;
+            MapMessage mapMessage = session.createMapMessage();
+            Enumeration<?> names = source.getMapNames();
+            while (names.hasMoreElements()) {
+                String name = (String) names.nextElement();
+                mapMessage.setObject(name, source.getObject(name));
+            }
+            copy = mapMessage;
+        } else {
+            LOGGER.warn("Unsupported message type {} of retry", message.getClass());
+            return null;
+        }
+        Enumeration<?> names = message.getPropertyNames();
+        while (names.hasMoreElements()) {
+            String name = (String) names.nextElement();
+            if (!StringUtils.startsWith(name, PROVIDER_PROP_PREFIX)) {
+                copy.setObjectProperty(name, message.getObjectProperty(name));
+            }
+        }
+        copy.setJMSType(message.getJMSType());
+        copy.setJMSCorrelationID(message.getJMSCorrelationID());
+        copy.setJMSReplyTo(message.getJMSReplyTo());
+        return copy;
+    }
+
+    private static String rootCause(Throwable failure) {
+        Throwable cause = ExceptionUtils.getRootCause(failure);
+        return String.valueOf(null == cause ? failure : cause);
+    }
+
+    /**
+     * The message property of the broker scheduler delay, empty to disable it
+     *
+     * @param delayProperty the delay property
+     */
+    public void setDelayProperty(String delayProperty) {
+        this.delayProperty = delayProperty;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public String getDeadLetter() {
+        return deadLetter;
+    }
+
+}
@@ -15,29 +15,67 @@
  */
 package com.kinglcc.spring.jms.core.listener;
 
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+
+import javax.jms.ConnectionFactory;
+import javax.jms.Session;
+
 import org.apache.commons.lang.StringUtils;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.jms.config.AbstractJmsListenerEndpoint;
 import org.springframework.jms.config.DefaultJmsListenerContainerFactory;
 import org.springframework.jms.config.JmsListenerEndpoint;
+import org.springframework.jms.config.MethodJmsListenerEndpoint;
+import org.springframework.jms.connection.DelegatingConnectionFactory;
+import org.springframework.jms.connection.SingleConnectionFactory;
 import org.springframework.jms.listener.DefaultMessageListenerContainer;
+import org.springframework.messaging.handler.annotation.SendTo;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import com.kinglcc.spring.jms.JmsException;
 import com.kinglcc.spring.jms.core.ClientIdGenerator;
+import com.kinglcc.spring.jms.core.ConnectionSharding;
 import com.kinglcc.spring.jms.core.DestinationType;
+import com.kinglcc.spring.jms.core.claimcheck.ClaimCheck;
+import com.kinglcc.spring.jms.core.lease.ClientIdLeaseKeeper;
 
 /**
  * DynamicJmsListenerContainerFactory
  * <pre>The dynamic jms listener container factory.
  * Create jmsListenerContainer with the name of destination.
+ * The task executor is resolved for each endpoint, see {@link JmsListenerExecutor}.
+ * The container is tuned for each endpoint, see {@link JmsListenerTuning}.
+ * The messages can be handled in parallel by group, see {@link JmsKeyOrdered}.
+ * The failed messages of a queue can be retried with backoff, see {@link JmsRetry}.
+ * The claim checks of the handled messages of a queue are released, see {@link ClaimCheck}.
+ * The rate of the received messages can be limited, see {@link JmsRateLimit}.
+ * The client id of the durable subscriber is leased to one node, see {@link ClientIdLeaseKeeper}.
  * </pre>
  *
  * @author liaochaochao
  * @since 2016年1月25日 下午1:21:36
  */
-public class DynamicJmsListenerContainerFactory extends DefaultJmsListenerContainerFactory {
+public class DynamicJmsListenerContainerFactory extends DefaultJmsListenerContainerFactory
+        implements BeanFactoryAware, DisposableBean {
 
     private static final String DEFAULT_ENDPOITID = "JmsListenerEndpointContainer#";
+    private static final String SESSION_TRANSACTED = "SESSION_TRANSACTED";
+    private static final String ACTIVEMQ_PACKAGE = "org.apache.activemq.";
+    private static final String ARTEMIS_PACKAGE = "org.apache.activemq.artemis.";
 
     private ClientIdGenerator clientIdGenerator;
+    private ListenerExecutorResolver executorResolver = new ListenerExecutorResolver();
+    private String retryDelayProperty = DelayedRetryHandler.DEFAULT_DELAY_PROP;
+    private ClaimCheck claimCheck;
+    private RateLimiterRegistry rateLimiterRegistry = new RateLimiterRegistry();
+    private ClientIdLeaseKeeper clientIdLeaseKeeper;
+    private ConnectionSharding connectionSharding;
+    private PlatformTransactionManager transactionManager;
 
     @Override
     public DefaultMessageListenerContainer createListenerContainer(JmsListenerEndpoint endpoint) {
@@ -51,10 +89,23 @@ public class DynamicJmsListenerContainerFactory extends DefaultJmsListenerContai
             instance.setSubscriptionShared(destinationType.isSubscriptionShared());
         }
         endpoint.setupListenerContainer(instance);
+        setupTuning(instance, endpoint);
+        setupTaskExecutor(instance, endpoint);
+        setupKeyOrdered(instance, endpoint);
+        setupRetry(instance, endpoint);
+        setupClaimCheck(instance);
+        setupRateLimit(instance, endpoint);
+        setupClientIdLease(instance, endpoint);
+        setupConnectionShard(instance, endpoint);
 
         return instance;
     }
 
+    @Override
+    protected DefaultMessageListenerContainer createContainerInstance() {
+        return new DynamicMessageListenerContainer();
+    }
+
     private String resolveClientId(JmsListenerEndpoint endpoint) {
         if (StringUtils.contains(endpoint.getId(), DEFAULT_ENDPOITID)) {
             return clientIdGenerator.generateId();
@@ -62,8 +113,258 @@ public class DynamicJmsListenerContainerFactory extends DefaultJmsListenerContai
         return clientIdGenerator.generateId(endpoint.getId());
     }
 
+    private void setupTuning(DefaultMessageListenerContainer instance, JmsListenerEndpoint endpoint) {
+        JmsListenerTuning tuning = findListenerAnnotation(endpoint, JmsListenerTuning.class);
+        if (null == tuning) {
+            return;
+        }
+        if (StringUtils.isNotBlank(tuning.cacheLevel())) {
+            instance.setCacheLevelName(tuning.cacheLevel());
+        }
+        if (tuning.receiveTimeout() >= 0) {
+            instance.setReceiveTimeout(tuning.receiveTimeout());
+        }
+        if (tuning.maxMessagesPerTask() > 0) {
+            instance.setMaxMessagesPerTask(tuning.maxMessagesPerTask());
+        }
+        if (tuning.idleConsumerLimit() > 0) {
+            instance.setIdleConsumerLimit(tuning.idleConsumerLimit());
+        }
+        if (tuning.idleTaskExecutionLimit() > 0) {
+            instance.setIdleTaskExecutionLimit(tuning.idleTaskExecutionLimit());
+        }
+        if (tuning.prefetch() >= 0) {
+            setupPrefetch(instance, endpoint, tuning.prefetch());
+        }
+        if (StringUtils.isNotBlank(tuning.acknowledgeMode())) {
+            boolean transacted = SESSION_TRANSACTED.equals(tuning.acknowledgeMode());
+            instance.setSessionTransacted(transacted);
+            if (!transacted) {
+                instance.setSessionAcknowledgeModeName(tuning.acknowledgeMode());
+            }
+        }
+    }
+
+    /**
+     * The prefetch is the ActiveMQ destination option, it's ignored with a warning
+     * for the other providers and the other containers
+     */
+    private void setupPrefetch(DefaultMessageListenerContainer instance, JmsListenerEndpoint endpoint, int prefetch) {
+        if (!(instance instanceof DynamicMessageListenerContainer)) {
+            logger.warn("The prefetch of " + endpoint.getId() + " is ignored, the container "
+                    + instance.getClass().getName() + " is not a DynamicMessageListenerContainer");
+            return;
+        }
+        if (!isActiveMQ(instance.getConnectionFactory())) {
+            logger.warn("The prefetch of " + endpoint.getId()
+                    + " is ignored, it's supported only by the ActiveMQ connection factory");
+            return;
+        }
+        ((DynamicMessageListenerContainer) instance).setPrefetch(prefetch);
+    }
+
+    private boolean isActiveMQ(ConnectionFactory connectionFactory) {
+        ConnectionFactory target = connectionFactory;
+        while (target instanceof SingleConnectionFactory || target instanceof DelegatingConnectionFactory) {
+            target = target instanceof SingleConnectionFactory
+                    ? ((SingleConnectionFactory) target).getTargetConnectionFactory()
+                    : ((DelegatingConnectionFactory) target).getTargetConnectionFactory();
+        }
+        if (null == target) {
+            return false;
+        }
+        String className = target.getClass().getName();
+        return className.startsWith(ACTIVEMQ_PACKAGE) && !className.startsWith(ARTEMIS_PACKAGE);
+    }
+
+    private void setupTaskExecutor(DefaultMessageListenerContainer instance, JmsListenerEndpoint endpoint) {
+        JmsListenerExecutor annotation = findListenerAnnotation(endpoint, JmsListenerExecutor.class);
+        Executor executor = executorResolver.resolveExecutor(endpoint.getId(), annotation);
+        if (null == executor) {
+            return;
+        }
+        instance.setTaskExecutor(executor);
+        if (null != annotation && annotation.poolSize() > 0) {
+            int poolSize = annotation.poolSize();
+            if (instance.getConcurrentConsumers() > poolSize) {
+                logger.warn("The concurrency of " + endpoint.getId() + " is limited by the pool size " + poolSize);
+                instance.setConcurrentConsumers(poolSize);
+            }
+            if (instance.getMaxConcurrentConsumers() > poolSize) {
+                instance.setMaxConcurrentConsumers(poolSize);
+            }
+        }
+    }
+
+    private void setupKeyOrdered(DefaultMessageListenerContainer instance, JmsListenerEndpoint endpoint) {
+        JmsKeyOrdered keyOrdered = findListenerAnnotation(endpoint, JmsKeyOrdered.class);
+        if (null == keyOrdered || !(instance instanceof DynamicMessageListenerContainer)) {
+            return;
+        }
+        checkKeyOrderedMethod(((MethodJmsListenerEndpoint) endpoint).getMethod());
+        instance.setConcurrentConsumers(1);
+        instance.setMaxConcurrentConsumers(1);
+        instance.setCacheLevel(DefaultMessageListenerContainer.CACHE_CONSUMER);
+        instance.setTransactionManager(null);
+        if (!instance.isSessionTransacted()) {
+            instance.setSessionAcknowledgeMode(Session.CLIENT_ACKNOWLEDGE);
+        }
+        KeyOrderedDispatcher dispatcher = new KeyOrderedDispatcher(endpoint.getId(), keyOrdered.workers(),
+                keyOrdered.batchSize(), keyOrdered.maxBatchAge());
+        ((DynamicMessageListenerContainer) instance).setKeyOrderedDispatcher(dispatcher);
+    }
+
+    /**
+     * The workers handle the messages without the session of the receiver, which is not thread-safe,
+     * so the method can't reply or take the session
+     */
+    private void checkKeyOrderedMethod(Method method) {
+        if (Void.TYPE != method.getReturnType() || null != AnnotationUtils.findAnnotation(method, SendTo.class)) {
+            throw new JmsException("The @JmsKeyOrdered method " + method + " should not reply, return void instead");
+        }
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            if (Session.class.isAssignableFrom(parameterType)) {
+                throw new JmsException("The @JmsKeyOrdered method " + method + " should not take the Session");
+            }
+        }
+    }
+
+    private void setupRetry(DefaultMessageListenerContainer instance, JmsListenerEndpoint endpoint) {
+        JmsRetry retry = findListenerAnnotation(endpoint, JmsRetry.class);
+        if (null == retry || !(instance instanceof DynamicMessageListenerContainer)) {
+            return;
+        }
+        DynamicMessageListenerContainer container = (DynamicMessageListenerContainer) instance;
+        if (container.isPubSubDomain() || null != container.getKeyOrderedDispatcher()) {
+            logger.warn("The @JmsRetry of " + endpoint.getId()
+                    + " is ignored, only the queue listener without @JmsKeyOrdered is supported");
+            return;
+        }
+        String queueName = DestinationType.QUEUE.getDestinationName(container.getDestinationName());
+        DelayedRetryHandler retryHandler = new DelayedRetryHandler(retry, queueName);
+        retryHandler.setDelayProperty(retryDelayProperty);
+        container.setRetryHandler(retryHandler);
+    }
+
+    private void setupClaimCheck(DefaultMessageListenerContainer instance) {
+        if (null == claimCheck || !(instance instanceof DynamicMessageListenerContainer)) {
+            return;
+        }
+        DynamicMessageListenerContainer container = (DynamicMessageListenerContainer) instance;
+        if (!container.isPubSubDomain() && null == container.getKeyOrderedDispatcher()) {
+            container.setClaimCheck(claimCheck);
+        }
+    }
+
+    private void setupRateLimit(DefaultMessageListenerContainer instance, JmsListenerEndpoint endpoint) {
+        if (!(instance instanceof DynamicMessageListenerContainer)) {
+            return;
+        }
+        JmsRateLimit rateLimit = findListenerAnnotation(endpoint, JmsRateLimit.class);
+        TokenBucket rateLimiter = rateLimiterRegistry.resolveRateLimiter(endpoint.getId(), rateLimit);
+        ((DynamicMessageListenerContainer) instance).setRateLimiter(rateLimiter);
+    }
+
+    private void setupClientIdLease(DefaultMessageListenerContainer instance, JmsListenerEndpoint endpoint) {
+        if (null == clientIdLeaseKeeper || !(instance instanceof DynamicMessageListenerContainer)
+                || !instance.isSubscriptionDurable() || instance.isSubscriptionShared()) {
+            return;
+        }
+        instance.setClientId(clientIdGenerator.generateSharedId(endpoint.getId()));
+        clientIdLeaseKeeper.register((DynamicMessageListenerContainer) instance);
+    }
+
+    private void setupConnectionShard(DefaultMessageListenerContainer instance, JmsListenerEndpoint endpoint) {
+        if (null == connectionSharding || instance.isSubscriptionDurable() || instance.isSubscriptionShared()) {
+            return;
+        }
+        if (null != transactionManager) {
+            logger.warn("The container of " + endpoint.getId() + " keeps the target connection factory, "
+                    + "the sessions of a shared connection are not enlisted in the transactions of "
+                    + transactionManager.getClass().getSimpleName());
+            return;
+        }
+        instance.setClientId(null);
+        instance.setConnectionFactory(connectionSharding.assign(endpoint.getId(), instance));
+    }
+
+    protected <A extends java.lang.annotation.Annotation> A findListenerAnnotation(JmsListenerEndpoint endpoint,
+            Class<A> annotationType) {
+        if (!(endpoint instanceof MethodJmsListenerEndpoint)) {
+            return null;
+        }
+        Method method = ((MethodJmsListenerEndpoint) endpoint).getMethod();
+        if (null == method) {
+            return null;
+        }
+        return AnnotationUtils.findAnnotation(method, annotationType);
+    }
+
     public void setClientIdGenerator(ClientIdGenerator clientIdGenerator) {
         this.clientIdGenerator = clientIdGenerator;
     }
 
+    /**
+     * The message property of the broker scheduler delay for {@link JmsRetry}
+     *
+     * @param retryDelayProperty the delay property, empty to disable it
+     */
+    public void setRetryDelayProperty(String retryDelayProperty) {
+        this.retryDelayProperty = retryDelayProperty;
+    }
+
+    /**
+     * Release the claim check of the handled message of the queue listener
+     *
+     * @param claimCheck the claim check
+     */
+    public void setClaimCheck(ClaimCheck claimCheck) {
+        this.claimCheck = claimCheck;
+    }
+
+    public void setRateLimiterRegistry(RateLimiterRegistry rateLimiterRegistry) {
+        this.rateLimiterRegistry = rateLimiterRegistry;
+    }
+
+    /**
+     * Lease the client id of the durable subscriber to one node, the others stand by
+     *
+     * @param clientIdLeaseKeeper the client id lease keeper
+     */
+    public void setClientIdLeaseKeeper(ClientIdLeaseKeeper clientIdLeaseKeeper) {
+        this.clientIdLeaseKeeper = clientIdLeaseKeeper;
+    }
+
+    @Override
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        super.setTransactionManager(transactionManager);
+        this.transactionManager = transactionManager;
+    }
+
+    /**
+     * Spread the containers of the non-durable subscriptions over the connection shards,
+     * the client id of the container is dropped for the shared connection.
+     * The containers with a transaction manager are not sharded
+     *
+     * @param connectionSharding the connection sharding
+     */
+    public void setConnectionSharding(ConnectionSharding connectionSharding) {
+        this.connectionSharding = connectionSharding;
+    }
+
+    public void setExecutorResolver(ListenerExecutorResolver executorResolver) {
+        this.executorResolver = executorResolver;
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        this.executorResolver.setBeanFactory(beanFactory);
+        this.rateLimiterRegistry.setBeanFactory(beanFactory);
+    }
+
+    @Override
+    public void destroy() {
+        this.executorResolver.destroy();
+    }
+
 }
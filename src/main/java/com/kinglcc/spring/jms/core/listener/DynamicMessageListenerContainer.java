@@ -0,0 +1,344 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.listener;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+
+import org.apache.commons.lang.StringUtils;
+import org.springframework.jms.JmsException;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+import org.springframework.jms.listener.SessionAwareMessageListener;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.kinglcc.spring.jms.core.claimcheck.ClaimCheck;
+import com.kinglcc.spring.jms.core.lease.ClientIdLeaseKeeper;
+
+/**
+ * DynamicMessageListenerContainer
+ * <pre>
+ * The {@link DefaultMessageListenerContainer} created by {@link DynamicJmsListenerContainerFactory}.
+ * Support the key ordered dispatch, see {@link KeyOrderedDispatcher}, the workers handle the messages
+ * without the session, which is used only by the receiver thread.
+ * Set the prefetch of the consumer by the destination option, see {@link JmsListenerTuning#prefetch()}.
+ * Support the delayed retry of failed messages, see {@link DelayedRetryHandler}.
+ * Release the claim check of the handled message after commit, after the commit of the
+ * transaction manager if any, see {@link ClaimCheck}.
+ * Limit the rate of the received messages, see {@link TokenBucket}.
+ * Count the received and failed messages for management, see {@link JmsListenerManager}.
+ * Start only when the lease of the client id is held, see {@link ClientIdLeaseKeeper}.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月14日 下午5:03:27
+ */
+public class DynamicMessageListenerContainer extends DefaultMessageListenerContainer {
+
+    private static final String PREFETCH_OPTION = "consumer.prefetchSize=";
+
+    private KeyOrderedDispatcher keyOrderedDispatcher;
+    private int prefetch = -1;
+    private DelayedRetryHandler retryHandler;
+    private ClaimCheck claimCheck;
+    private TokenBucket rateLimiter;
+    private ClientIdLeaseKeeper clientIdLeaseKeeper;
+    private volatile boolean standby;
+    private long receiveTimeout = DEFAULT_RECEIVE_TIMEOUT;
+    private final AtomicLong receivedMessages = new AtomicLong();
+    private final AtomicLong failedMessages = new AtomicLong();
+    private final ThreadLocal<Message> handledMessage = new ThreadLocal<Message>();
+
+    @Override
+    public void start() throws JmsException {
+        if (null != clientIdLeaseKeeper && !clientIdLeaseKeeper.tryAcquire(getClientId())) {
+            standby = true;
+            logger.info("The client id " + getClientId() + " is leased by another node, stand by");
+            return;
+        }
+        standby = false;
+        super.start();
+    }
+
+    /**
+     * Start the standby container after the lease of the client id is acquired
+     */
+    public void takeOver() {
+        standby = false;
+        if (!isActive()) {
+            initialize();
+        }
+        super.start();
+    }
+
+    /**
+     * Shut down the container after the lease of the client id is lost,
+     * the connection is closed so the client id is free for the new owner
+     */
+    public void standBy() {
+        standby = true;
+        shutdown();
+    }
+
+    public boolean isStandby() {
+        return standby;
+    }
+
+    @Override
+    public void destroy() {
+        if (null != clientIdLeaseKeeper) {
+            clientIdLeaseKeeper.unregister(getClientId());
+        }
+        super.destroy();
+    }
+
+    @Override
+    protected Message receiveMessage(MessageConsumer consumer) throws JMSException {
+        if (null != rateLimiter && !rateLimiter.acquire()) {
+            return null;
+        }
+        Message message = receiveFromConsumer(consumer);
+        if (null != message) {
+            receivedMessages.incrementAndGet();
+        } else if (null != rateLimiter) {
+            rateLimiter.refund();
+        }
+        return message;
+    }
+
+    /**
+     * Wait no longer than the open key ordered batch may age, so an idle receive completes the batch in time
+     */
+    private Message receiveFromConsumer(MessageConsumer consumer) throws JMSException {
+        long remaining = null == keyOrderedDispatcher ? -1 : keyOrderedDispatcher.getBatchAgeRemaining();
+        if (remaining < 0 || (receiveTimeout >= 0 && receiveTimeout <= remaining)) {
+            return super.receiveMessage(consumer);
+        }
+        return remaining == 0 ? consumer.receiveNoWait() : consumer.receive(remaining);
+    }
+
+    @Override
+    protected void handleListenerException(Throwable ex) {
+        failedMessages.incrementAndGet();
+        super.handleListenerException(ex);
+    }
+
+    @Override
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    protected void doInvokeListener(final SessionAwareMessageListener listener, final Session session,
+            Message message) throws JMSException {
+        if (null == keyOrderedDispatcher) {
+            invokeWithRetry(listener, session, message);
+            return;
+        }
+        keyOrderedDispatcher.dispatch(message, new KeyOrderedDispatcher.MessageHandler() {
+
+            @Override
+            public void handle(Message message) throws Exception {
+                listener.onMessage(message, null);
+            }
+        });
+    }
+
+    /**
+     * Append the prefetch option to the name of the consumer destination only,
+     * so the destination name of the container is kept for the others
+     */
+    @Override
+    protected Destination resolveDestinationName(Session session, String destinationName) throws JMSException {
+        if (prefetch < 0 || null == destinationName) {
+            return super.resolveDestinationName(session, destinationName);
+        }
+        String separator = StringUtils.contains(destinationName, "?") ? "&" : "?";
+        return super.resolveDestinationName(session, destinationName + separator + PREFETCH_OPTION + prefetch);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private void invokeWithRetry(SessionAwareMessageListener listener, Session session, Message message)
+            throws JMSException {
+        if (null == retryHandler) {
+            super.doInvokeListener(listener, session, message);
+            markHandled(message);
+            return;
+        }
+        try {
+            super.doInvokeListener(listener, session, message);
+            markHandled(message);
+        } catch (JMSException | RuntimeException ex) {
+            if (!retryHandler.handleFailure(session, message, ex, getDestinationResolver())) {
+                throw ex;
+            }
+        }
+    }
+
+    @Override
+    protected void commitIfNecessary(Session session, Message message) throws JMSException {
+        if (null == keyOrderedDispatcher) {
+            super.commitIfNecessary(session, message);
+            releaseClaimCheck(message);
+            return;
+        }
+        if (null != message && !keyOrderedDispatcher.isBatchDue() && !keyOrderedDispatcher.hasFailed()) {
+            return;
+        }
+        completeBatch(session);
+    }
+
+    @Override
+    protected void rollbackIfNecessary(Session session) throws JMSException {
+        handledMessage.remove();
+        super.rollbackIfNecessary(session);
+    }
+
+    private void markHandled(Message message) {
+        if (null != claimCheck) {
+            handledMessage.set(message);
+        }
+    }
+
+    /**
+     * Release the body of the handled message once it's acknowledged, with a transaction manager
+     * the transaction commits after this method, so the body is released after the commit
+     */
+    private void releaseClaimCheck(final Message message) {
+        if (null == claimCheck) {
+            return;
+        }
+        Message handled = handledMessage.get();
+        handledMessage.remove();
+        if (null == message || handled != message) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            claimCheck.release(message);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+            @Override
+            public void afterCommit() {
+                claimCheck.release(message);
+            }
+        });
+    }
+
+    @Override
+    protected void noMessageReceived(Object invoker, Session session) {
+        super.noMessageReceived(invoker, session);
+        if (null != keyOrderedDispatcher && null != session && keyOrderedDispatcher.hasPending()) {
+            try {
+                completeBatch(session);
+            } catch (JMSException ex) {
+                invokeExceptionListener(ex);
+                logger.warn("Failed to complete the batch of key ordered messages", ex);
+            }
+        }
+    }
+
+    private void completeBatch(Session session) throws JMSException {
+        Message lastMessage = keyOrderedDispatcher.getLastMessage();
+        Throwable failure;
+        try {
+            failure = keyOrderedDispatcher.awaitBatch();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            keyOrderedDispatcher.abortBatch();
+            rollbackIfNecessary(session);
+            return;
+        }
+        if (null == lastMessage) {
+            return;
+        }
+        if (null != failure) {
+            rollbackIfNecessary(session);
+            handleListenerException(failure);
+        } else {
+            super.commitIfNecessary(session, lastMessage);
+        }
+    }
+
+    @Override
+    protected void doShutdown() throws JMSException {
+        super.doShutdown();
+        if (null != keyOrderedDispatcher) {
+            keyOrderedDispatcher.shutdown();
+        }
+    }
+
+    public KeyOrderedDispatcher getKeyOrderedDispatcher() {
+        return keyOrderedDispatcher;
+    }
+
+    public void setKeyOrderedDispatcher(KeyOrderedDispatcher keyOrderedDispatcher) {
+        this.keyOrderedDispatcher = keyOrderedDispatcher;
+    }
+
+    public int getPrefetch() {
+        return prefetch;
+    }
+
+    public void setPrefetch(int prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    public void setClaimCheck(ClaimCheck claimCheck) {
+        this.claimCheck = claimCheck;
+    }
+
+    @Override
+    public void setReceiveTimeout(long receiveTimeout) {
+        super.setReceiveTimeout(receiveTimeout);
+        this.receiveTimeout = receiveTimeout;
+    }
+
+    public long getReceiveTimeout() {
+        return receiveTimeout;
+    }
+
+    public long getReceivedMessages() {
+        return receivedMessages.get();
+    }
+
+    public long getFailedMessages() {
+        return failedMessages.get();
+    }
+
+    public TokenBucket getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public void setRateLimiter(TokenBucket rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    public void setClientIdLeaseKeeper(ClientIdLeaseKeeper clientIdLeaseKeeper) {
+        this.clientIdLeaseKeeper = clientIdLeaseKeeper;
+    }
+
+    public DelayedRetryHandler getRetryHandler() {
+        return retryHandler;
+    }
+
+    public void setRetryHandler(DelayedRetryHandler retryHandler) {
+        this.retryHandler = retryHandler;
+    }
+
+}
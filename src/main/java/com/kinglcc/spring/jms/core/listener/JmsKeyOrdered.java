@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.listener;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * JmsKeyOrdered
+ * <pre>
+ * Consume the destination with one receiver, and handle the messages by a pool of
+ * workers partitioned by the message group (JMSType). The messages of the same group
+ * are handled in order, the messages of different groups are handled in parallel.
+ * The session is committed (or acknowledged) after a whole batch has been handled,
+ * a batch ends when it reaches the batch size or the maximum batch age,
+ * and rolled back (or recovered) if any message of the batch failed.
+ * The listener method should return void, without @SendTo or a Session parameter, because the
+ * workers have no session, the replies and the JMSReplyTo are not supported.
+ * </pre>
+ * @see KeyOrderedDispatcher
+ *
+ * @author liaochaochao
+ * @since 2016年3月14日 下午4:20:13
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface JmsKeyOrdered {
+
+    /**
+     * The number of workers, 0 means the number of available processors
+     *
+     * @return The number of workers
+     */
+    int workers() default 0;
+
+    /**
+     * The maximum number of messages handled in one batch before the session is committed
+     *
+     * @return The batch size
+     */
+    int batchSize() default 500;
+
+    /**
+     * The maximum time in milliseconds from the first message of a batch until the session is committed,
+     * bounds the delay of the acknowledgement when the messages arrive slower than the batch size
+     *
+     * @return The maximum batch age
+     */
+    long maxBatchAge() default 1000;
+
+}
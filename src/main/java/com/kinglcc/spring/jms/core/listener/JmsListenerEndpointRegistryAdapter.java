@@ -15,26 +15,63 @@
  */
 package com.kinglcc.spring.jms.core.listener;
 
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.jms.config.JmsListenerContainerFactory;
 import org.springframework.jms.config.JmsListenerEndpoint;
 import org.springframework.jms.config.JmsListenerEndpointRegistry;
 import org.springframework.jms.config.MethodJmsListenerEndpoint;
+import org.springframework.jms.listener.MessageListenerContainer;
 import org.springframework.messaging.handler.annotation.support.MessageHandlerMethodFactory;
 
+import com.kinglcc.spring.jms.core.converter.ConverterWarmer;
+import com.kinglcc.spring.jms.core.converter.TypeIdRegistry;
+
 /**
  * JmsListenerEndpointRegistryAdapter
- * <pre>The {@link JmsListenerEndpointRegistry} support {@link BeanFactoryAware}</pre>
+ * <pre>The {@link JmsListenerEndpointRegistry} support {@link BeanFactoryAware}.
+ * The listener containers are initialized and started in parallel, see {@link ListenerContainerStarter}.
+ * The latency of the messages can be tracked, see {@link LatencyTracker}.
+ * The listeners of a queue selected by the JMSType can share one container, see {@link JmsTypeDispatchEndpoint}.
+ * The converters can be warmed up before the containers start, see {@link ConverterWarmer}.
+ * </pre>
  *
  * @author liaochaochao
  * @since 2016年1月28日 下午8:32:08
  */
-public class JmsListenerEndpointRegistryAdapter extends JmsListenerEndpointRegistry implements BeanFactoryAware {
+public class JmsListenerEndpointRegistryAdapter extends JmsListenerEndpointRegistry
+        implements BeanFactoryAware, ApplicationListener<ContextRefreshedEvent> {
 
     private MessageHandlerMethodFactory messageHandlerMethodFactory;
     private BeanFactory beanFactory;
+    private LocalTopicDispatcher localTopicDispatcher;
+    private TypeIdRegistry typeIdRegistry;
+    private LatencyTracker latencyTracker;
+    private boolean typeDispatch;
+    private ConverterWarmer converterWarmer;
+    private final Set<Type> listenerParameterTypes = new LinkedHashSet<Type>();
+    private final Map<String, JmsTypeDispatchEndpoint> typeDispatchEndpoints =
+            new HashMap<String, JmsTypeDispatchEndpoint>();
+    private final Map<JmsListenerContainerFactory<?>, Integer> factoryIndexes =
+            new IdentityHashMap<JmsListenerContainerFactory<?>, Integer>();
+    private ListenerContainerStarter containerStarter = new ListenerContainerStarter();
+    private int phase = Integer.MAX_VALUE;
+    private final Set<String> listenerContainerIds = new LinkedHashSet<String>();
 
     @Override
     public void registerListenerContainer(JmsListenerEndpoint endpoint, JmsListenerContainerFactory<?> factory) {
@@ -43,15 +80,213 @@ public class JmsListenerEndpointRegistryAdapter extends JmsListenerEndpointRegis
             MethodJmsListenerEndpointAdapter methodEndpoint = new MethodJmsListenerEndpointAdapter(
                     (MethodJmsListenerEndpoint) endpoint, messageHandlerMethodFactory);
             methodEndpoint.setBeanFactory(beanFactory);
+            methodEndpoint.setLatencyTracker(latencyTracker);
+            registerLocalListener(methodEndpoint);
+            registerTypeIds(methodEndpoint.getMethod());
+            registerParameterTypes(methodEndpoint.getMethod());
+            if (typeDispatch && registerTypeDispatch(methodEndpoint, factory)) {
+                return;
+            }
             jmsListenerEndpoint = methodEndpoint;
         }
         super.registerListenerContainer(jmsListenerEndpoint, factory);
     }
 
+    private boolean registerTypeDispatch(MethodJmsListenerEndpointAdapter methodEndpoint,
+            JmsListenerContainerFactory<?> factory) {
+        Set<String> types = JmsTypeDispatchEndpoint.resolveTypes(methodEndpoint);
+        if (null == types) {
+            return false;
+        }
+        JmsTypeDispatchEndpoint dispatchEndpoint;
+        boolean created = false;
+        synchronized (typeDispatchEndpoints) {
+            String key = typeDispatchKey(methodEndpoint.getDestination(), factory);
+            dispatchEndpoint = typeDispatchEndpoints.get(key);
+            if (null == dispatchEndpoint) {
+                dispatchEndpoint = new JmsTypeDispatchEndpoint(key, methodEndpoint.getDestination());
+                typeDispatchEndpoints.put(key, dispatchEndpoint);
+                created = true;
+            }
+        }
+        if (!dispatchEndpoint.addEndpoint(methodEndpoint, types)) {
+            return false;
+        }
+        if (created) {
+            super.registerListenerContainer(dispatchEndpoint, factory);
+        }
+        return true;
+    }
+
+    /**
+     * The key of the destination of the container factory, also the id of the dispatch endpoint,
+     * the destination of the first factory is the key, others are suffixed by the factory index
+     */
+    private String typeDispatchKey(String destination, JmsListenerContainerFactory<?> factory) {
+        Integer index = factoryIndexes.get(factory);
+        if (null == index) {
+            index = factoryIndexes.size();
+            factoryIndexes.put(factory, index);
+        }
+        return 0 == index ? destination : destination + "@" + index;
+    }
+
+    /**
+     * Create the listener container without initialization,
+     * it will be initialized when started by the {@link ListenerContainerStarter}
+     */
+    @Override
+    protected MessageListenerContainer createListenerContainer(JmsListenerEndpoint endpoint,
+            JmsListenerContainerFactory<?> factory) {
+        MessageListenerContainer listenerContainer = factory.createListenerContainer(endpoint);
+        int containerPhase = listenerContainer.getPhase();
+        if (containerPhase != Integer.MAX_VALUE) {
+            if (this.phase != Integer.MAX_VALUE && this.phase != containerPhase) {
+                throw new IllegalStateException("Encountered phase mismatch between container factory definitions: "
+                        + this.phase + " vs " + containerPhase);
+            }
+            this.phase = containerPhase;
+        }
+        containerStarter.register(endpoint.getId(), listenerContainer, isLazyStartup(endpoint));
+        synchronized (listenerContainerIds) {
+            listenerContainerIds.add(endpoint.getId());
+        }
+        return listenerContainer;
+    }
+
+    private boolean isLazyStartup(JmsListenerEndpoint endpoint) {
+        if (!(endpoint instanceof MethodJmsListenerEndpoint)) {
+            return false;
+        }
+        Method method = ((MethodJmsListenerEndpoint) endpoint).getMethod();
+        return null != method && null != AnnotationUtils.findAnnotation(method, JmsLazyStartup.class);
+    }
+
+    /**
+     * The ids of the registered listener containers
+     *
+     * @return the container ids in registration order
+     */
+    public Set<String> getListenerContainerIds() {
+        synchronized (listenerContainerIds) {
+            return new LinkedHashSet<String>(listenerContainerIds);
+        }
+    }
+
+    /**
+     * The ids of the endpoints dispatched by the JMSType in the container
+     *
+     * @param id the container id
+     * @return the endpoint ids, null if the container isn't a {@link JmsTypeDispatchEndpoint}
+     */
+    public List<String> getDispatchedEndpointIds(String id) {
+        synchronized (typeDispatchEndpoints) {
+            for (JmsTypeDispatchEndpoint dispatchEndpoint : typeDispatchEndpoints.values()) {
+                if (dispatchEndpoint.getId().equals(id)) {
+                    return dispatchEndpoint.getEndpointIds();
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void start() {
+        if (null != converterWarmer) {
+            synchronized (listenerParameterTypes) {
+                converterWarmer.warmup(new ArrayList<Type>(listenerParameterTypes));
+            }
+        }
+        containerStarter.start();
+    }
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        containerStarter.startLazy();
+    }
+
+    @Override
+    public int getPhase() {
+        return this.phase;
+    }
+
+    private void registerLocalListener(MethodJmsListenerEndpointAdapter methodEndpoint) {
+        if (null == localTopicDispatcher || !LocalTopicDispatcher.supports(methodEndpoint.getDestination())) {
+            return;
+        }
+        methodEndpoint.setLocalTopicDispatcher(localTopicDispatcher);
+        methodEndpoint.setLocalOriginSelector(localTopicDispatcher.getLocalOriginSelector());
+    }
+
+    private void registerTypeIds(Method method) {
+        if (null == typeIdRegistry || null == method) {
+            return;
+        }
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            typeIdRegistry.register(parameterType);
+        }
+    }
+
+    private void registerParameterTypes(Method method) {
+        if (null == converterWarmer || null == method) {
+            return;
+        }
+        synchronized (listenerParameterTypes) {
+            Collections.addAll(listenerParameterTypes, method.getGenericParameterTypes());
+        }
+    }
+
     public void setMessageHandlerMethodFactory(MessageHandlerMethodFactory messageHandlerMethodFactory) {
         this.messageHandlerMethodFactory = messageHandlerMethodFactory;
     }
 
+    public void setLocalTopicDispatcher(LocalTopicDispatcher localTopicDispatcher) {
+        this.localTopicDispatcher = localTopicDispatcher;
+    }
+
+    /**
+     * Register the compact type ids of the listener parameter types
+     *
+     * @param typeIdRegistry the type id registry
+     */
+    public void setTypeIdRegistry(TypeIdRegistry typeIdRegistry) {
+        this.typeIdRegistry = typeIdRegistry;
+    }
+
+    /**
+     * Dispatch the messages of a queue to the listener methods by the JMSType in one container
+     *
+     * @param typeDispatch dispatch by the JMSType or not
+     */
+    public void setTypeDispatch(boolean typeDispatch) {
+        this.typeDispatch = typeDispatch;
+    }
+
+    /**
+     * Warm up the converters of the listener parameter types before the containers start
+     *
+     * @param converterWarmer the converter warmer
+     */
+    public void setConverterWarmer(ConverterWarmer converterWarmer) {
+        this.converterWarmer = converterWarmer;
+    }
+
+    public LatencyTracker getLatencyTracker() {
+        return latencyTracker;
+    }
+
+    public void setLatencyTracker(LatencyTracker latencyTracker) {
+        this.latencyTracker = latencyTracker;
+    }
+
+    public void setContainerStarter(ListenerContainerStarter containerStarter) {
+        this.containerStarter = containerStarter;
+    }
+
+    public ListenerContainerStarter getContainerStarter() {
+        return containerStarter;
+    }
+
     @Override
     public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
         this.beanFactory = beanFactory;
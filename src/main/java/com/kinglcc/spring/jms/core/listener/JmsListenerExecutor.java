@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.listener;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * JmsListenerExecutor
+ * <pre>
+ * Select the task executor of the jms listener container.
+ * Use the executor bean named {@link #value()}, or an isolated thread pool
+ * with {@link #poolSize()} threads, or virtual threads if the runtime supports.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月10日 下午2:36:18
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface JmsListenerExecutor {
+
+    /**
+     * The bean identifier of the {@link java.util.concurrent.Executor}
+     *
+     * @return The bean identifier of the executor
+     */
+    String value() default "";
+
+    /**
+     * The thread number of the isolated thread pool, the concurrency of the
+     * container is limited by it. 0 means not isolated.
+     *
+     * @return The thread number of the isolated thread pool
+     */
+    int poolSize() default 0;
+
+    /**
+     * Use virtual threads, fallback to the default executor if the runtime
+     * does not support virtual threads.
+     *
+     * @return use virtual threads or not
+     */
+    boolean virtualThreads() default false;
+
+}
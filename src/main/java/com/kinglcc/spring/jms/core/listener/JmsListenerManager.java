@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.listener;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+import org.springframework.jms.listener.MessageListenerContainer;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import com.kinglcc.spring.jms.JmsException;
+
+/**
+ * JmsListenerManager
+ * <pre>
+ * Manage the listener containers of the {@link JmsListenerEndpointRegistryAdapter} at runtime:
+ * list the live stats, pause and resume, change the concurrency and the receive timeout.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月23日 上午10:15:32
+ */
+@ManagedResource(description = "The jms listener containers")
+public class JmsListenerManager {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JmsListenerManager.class);
+
+    private final JmsListenerEndpointRegistryAdapter registry;
+
+    public JmsListenerManager(JmsListenerEndpointRegistryAdapter registry) {
+        this.registry = registry;
+    }
+
+    @ManagedAttribute(description = "The live stats of each listener container")
+    public Map<String, Map<String, Object>> getContainers() {
+        Map<String, Map<String, Object>> containers = new LinkedHashMap<String, Map<String, Object>>();
+        for (String id : registry.getListenerContainerIds()) {
+            containers.put(id, getContainer(id));
+        }
+        return containers;
+    }
+
+    @ManagedOperation(description = "The live stats of the listener container")
+    public Map<String, Object> getContainer(String id) {
+        MessageListenerContainer container = getListenerContainer(id);
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("running", container.isRunning());
+        Long startupTime = registry.getContainerStarter().getStartupTimes().get(id);
+        if (null != startupTime) {
+            stats.put("startupTime", startupTime);
+        }
+        if (container instanceof DefaultMessageListenerContainer) {
+            DefaultMessageListenerContainer dmlc = (DefaultMessageListenerContainer) container;
+            stats.put("destination", dmlc.getDestinationName());
+            stats.put("concurrentConsumers", dmlc.getConcurrentConsumers());
+            stats.put("maxConcurrentConsumers", dmlc.getMaxConcurrentConsumers());
+            stats.put("scheduledConsumers", dmlc.getScheduledConsumerCount());
+            stats.put("activeConsumers", dmlc.getActiveConsumerCount());
+            stats.put("pausedTasks", dmlc.getPausedTaskCount());
+            stats.put("recovering", dmlc.isRecovering());
+        }
+        List<String> dispatchedEndpointIds = registry.getDispatchedEndpointIds(id);
+        if (null != dispatchedEndpointIds) {
+            stats.put("dispatchedEndpoints", dispatchedEndpointIds);
+        }
+        LatencyTracker latencyTracker = registry.getLatencyTracker();
+        if (null != latencyTracker) {
+            stats.put("oldestInFlightAge", latencyTracker.getOldestInFlightAge(id));
+        }
+        if (container instanceof DynamicMessageListenerContainer) {
+            DynamicMessageListenerContainer dynamic = (DynamicMessageListenerContainer) container;
+            stats.put("receiveTimeout", dynamic.getReceiveTimeout());
+            stats.put("receivedMessages", dynamic.getReceivedMessages());
+            stats.put("failedMessages", dynamic.getFailedMessages());
+            TokenBucket rateLimiter = dynamic.getRateLimiter();
+            if (null != rateLimiter) {
+                stats.put("rateLimit", rateLimiter.getPermitsPerSecond());
+                stats.put("throttledMessages", rateLimiter.getThrottledPermits());
+                stats.put("throttleWaitTime", rateLimiter.getThrottleWaitMillis());
+            }
+        }
+        return stats;
+    }
+
+    @ManagedOperation(description = "Pause the listener container, the consumers are kept")
+    public void pause(String id) {
+        getListenerContainer(id).stop();
+        LOGGER.info("Paused the jms listener container {}", id);
+    }
+
+    @ManagedOperation(description = "Resume the paused listener container")
+    public void resume(String id) {
+        getListenerContainer(id).start();
+        LOGGER.info("Resumed the jms listener container {}", id);
+    }
+
+    @ManagedOperation(description = "Change the concurrent consumers of the listener container")
+    public void setConcurrency(String id, int concurrentConsumers, int maxConcurrentConsumers) {
+        DefaultMessageListenerContainer container = getDefaultListenerContainer(id);
+        if (container instanceof DynamicMessageListenerContainer
+                && null != ((DynamicMessageListenerContainer) container).getKeyOrderedDispatcher()) {
+            throw new JmsException(String.format("The concurrency of the key ordered container (%s) is fixed", id));
+        }
+        container.setConcurrentConsumers(concurrentConsumers);
+        container.setMaxConcurrentConsumers(maxConcurrentConsumers);
+        LOGGER.info("Changed the concurrency of the jms listener container {} to {}-{}", id,
+                container.getConcurrentConsumers(), container.getMaxConcurrentConsumers());
+    }
+
+    @ManagedOperation(description = "Change the receive timeout of the listener container, in milliseconds")
+    public void setReceiveTimeout(String id, long receiveTimeout) {
+        getDefaultListenerContainer(id).setReceiveTimeout(receiveTimeout);
+        LOGGER.info("Changed the receive timeout of the jms listener container {} to {}ms", id, receiveTimeout);
+    }
+
+    private MessageListenerContainer getListenerContainer(String id) {
+        MessageListenerContainer container = registry.getListenerContainer(id);
+        if (null == container) {
+            throw new JmsException(String.format("NOT FOUND the listener container (%s)", id));
+        }
+        return container;
+    }
+
+    private DefaultMessageListenerContainer getDefaultListenerContainer(String id) {
+        MessageListenerContainer container = getListenerContainer(id);
+        if (!(container instanceof DefaultMessageListenerContainer)) {
+            throw new JmsException(String.format("The listener container (%s) can't be tuned", id));
+        }
+        return (DefaultMessageListenerContainer) container;
+    }
+
+}
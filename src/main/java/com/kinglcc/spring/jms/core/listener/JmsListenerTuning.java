@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.listener;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * JmsListenerTuning
+ * <pre>
+ * Tune the jms listener container of the annotated listener method.
+ * The empty or negative attributes keep the settings of the container factory.
+ * </pre>
+ * @see org.springframework.jms.listener.DefaultMessageListenerContainer
+ *
+ * @author liaochaochao
+ * @since 2016年3月11日 上午11:05:42
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface JmsListenerTuning {
+
+    /**
+     * The cache level name, e.g. CACHE_CONSUMER
+     *
+     * @return The cache level name
+     */
+    String cacheLevel() default "";
+
+    /**
+     * The timeout to use for receive calls, in milliseconds
+     *
+     * @return The receive timeout
+     */
+    long receiveTimeout() default -1;
+
+    /**
+     * The maximum number of messages to process in one task
+     *
+     * @return The maximum number of messages per task
+     */
+    int maxMessagesPerTask() default -1;
+
+    /**
+     * The limit for the number of idle consumers
+     *
+     * @return The idle consumer limit
+     */
+    int idleConsumerLimit() default -1;
+
+    /**
+     * The limit for idle executions of a consumer task
+     *
+     * @return The idle task execution limit
+     */
+    int idleTaskExecutionLimit() default -1;
+
+    /**
+     * The consumer prefetch size, appended as the ActiveMQ destination option
+     * {@code consumer.prefetchSize} only when the destination of the consumer is resolved,
+     * the destination name of the container is kept.
+     * Only ActiveMQ (not Artemis) takes the option, with the other providers, or a container
+     * other than {@link DynamicMessageListenerContainer}, it's ignored with a warning
+     *
+     * @return The prefetch size
+     */
+    int prefetch() default -1;
+
+    /**
+     * The session acknowledge mode name: SESSION_TRANSACTED, AUTO_ACKNOWLEDGE,
+     * CLIENT_ACKNOWLEDGE or DUPS_OK_ACKNOWLEDGE
+     *
+     * @return The session acknowledge mode name
+     */
+    String acknowledgeMode() default "";
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.listener;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * JmsRateLimit
+ * <pre>
+ * Limit the rate of the messages received by the listener container with a token bucket.
+ * The throttled messages stay on the broker, the prefetch of the consumer should be small,
+ * see {@link JmsListenerTuning#prefetch()}.
+ * The values support placeholders, and can be set by the properties
+ * jms.message.rateLimit.{endpointId} and jms.message.rateLimitBurst.{endpointId} without the annotation.
+ * </pre>
+ * @see RateLimiterRegistry
+ *
+ * @author liaochaochao
+ * @since 2016年3月22日 下午2:30:17
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface JmsRateLimit {
+
+    /**
+     * The permits (messages) per second
+     *
+     * @return The permits per second
+     */
+    String value();
+
+    /**
+     * The max permits of a burst, the default is the permits per second
+     *
+     * @return The burst
+     */
+    String burst() default "";
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.listener;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * JmsRetry
+ * <pre>
+ * Retry the failed message of a queue listener with exponential backoff, instead of
+ * rolling back the session. The failed message is sent again to the queue with a
+ * delivery delay in the same session, so the consumer goes on with the next message.
+ * After the max attempts the message is sent to the dead letter queue.
+ * </pre>
+ * @see DelayedRetryHandler
+ *
+ * @author liaochaochao
+ * @since 2016年3月18日 上午10:12:36
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface JmsRetry {
+
+    /**
+     * The max number of attempts, include the first delivery
+     *
+     * @return The max attempts
+     */
+    int maxAttempts() default 3;
+
+    /**
+     * The delay before the first retry, in milliseconds
+     *
+     * @return The initial interval
+     */
+    long initialInterval() default 1000;
+
+    /**
+     * The multiplier of the delay for each retry
+     *
+     * @return The multiplier
+     */
+    double multiplier() default 2.0;
+
+    /**
+     * The max delay of one retry, in milliseconds
+     *
+     * @return The max interval
+     */
+    long maxInterval() default 60000;
+
+    /**
+     * The random factor of the delay, 0.1 means plus or minus 10%
+     *
+     * @return The jitter
+     */
+    double jitter() default 0.1;
+
+    /**
+     * The dead letter destination, the default is "DLQ." followed by the queue name
+     *
+     * @return The dead letter destination name
+     */
+    String deadLetter() default "";
+
+}
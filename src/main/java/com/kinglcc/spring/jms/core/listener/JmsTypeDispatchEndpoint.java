@@ -0,0 +1,258 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.listener;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+
+import org.apache.commons.lang.StringUtils;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.jms.config.AbstractJmsListenerEndpoint;
+import org.springframework.jms.listener.AbstractMessageListenerContainer;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+import org.springframework.jms.listener.MessageListenerContainer;
+import org.springframework.jms.listener.SessionAwareMessageListener;
+import org.springframework.jms.support.JmsUtils;
+
+import com.kinglcc.spring.jms.JmsException;
+import com.kinglcc.spring.jms.core.DestinationType;
+
+/**
+ * JmsTypeDispatchEndpoint
+ * <pre>
+ * One endpoint for the listener methods of a queue selected by the JMSType, such as
+ * JMSType = 'group' or JMSType IN ('group1', 'group2').
+ * One container consumes the queue with the selector of all the types, and the messages
+ * are dispatched to the listener methods by the index of the JMSType in process,
+ * instead of one consumer and one selector for each method in the broker.
+ * The methods with the container level annotations keep their own containers.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月24日 下午2:16:47
+ */
+public class JmsTypeDispatchEndpoint extends AbstractJmsListenerEndpoint {
+
+    private static final String ID_PREFIX = "JmsTypeDispatch#";
+
+    private static final Pattern TYPE_EQUALS = Pattern.compile("^\\s*JMSType\\s*=\\s*'([^']*)'\\s*$");
+    private static final Pattern TYPE_IN =
+            Pattern.compile("^\\s*JMSType\\s+(?i:IN)\\s*\\((\\s*'[^']*'\\s*(,\\s*'[^']*'\\s*)*)\\)\\s*$");
+    private static final Pattern QUOTED = Pattern.compile("'([^']*)'");
+
+    private static final List<Class<? extends Annotation>> CONTAINER_ANNOTATIONS =
+            new ArrayList<Class<? extends Annotation>>();
+
+    static {
+        CONTAINER_ANNOTATIONS.add(JmsListenerTuning.class);
+        CONTAINER_ANNOTATIONS.add(JmsListenerExecutor.class);
+        CONTAINER_ANNOTATIONS.add(JmsKeyOrdered.class);
+        CONTAINER_ANNOTATIONS.add(JmsRetry.class);
+        CONTAINER_ANNOTATIONS.add(JmsRateLimit.class);
+        CONTAINER_ANNOTATIONS.add(JmsLazyStartup.class);
+    }
+
+    private final Map<String, MethodJmsListenerEndpointAdapter> endpoints =
+            new LinkedHashMap<String, MethodJmsListenerEndpointAdapter>();
+    private final TypeDispatcher dispatcher = new TypeDispatcher();
+    private MessageListenerContainer container;
+
+    /**
+     * Create the endpoint of the destination
+     *
+     * @param key the unique key of the destination and the container factory
+     * @param destination the destination
+     */
+    public JmsTypeDispatchEndpoint(String key, String destination) {
+        setId(ID_PREFIX + key);
+        setDestination(destination);
+    }
+
+    /**
+     * The JMSTypes of the endpoint which can be dispatched by type
+     *
+     * @param endpoint the endpoint
+     * @return the JMSTypes, null if not supported
+     */
+    public static Set<String> resolveTypes(MethodJmsListenerEndpointAdapter endpoint) {
+        if (DestinationType.asDestinationType(endpoint.getDestination()).isPubSubDomain()
+                || StringUtils.isNotBlank(endpoint.getSubscription()) || hasContainerAnnotation(endpoint.getMethod())) {
+            return null;
+        }
+        return parseTypes(endpoint.getSelector());
+    }
+
+    private static boolean hasContainerAnnotation(Method method) {
+        if (null == method) {
+            return true;
+        }
+        for (Class<? extends Annotation> annotationType : CONTAINER_ANNOTATIONS) {
+            if (null != AnnotationUtils.findAnnotation(method, annotationType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static Set<String> parseTypes(String selector) {
+        if (StringUtils.isBlank(selector)) {
+            return null;
+        }
+        Matcher matcher = TYPE_EQUALS.matcher(selector);
+        if (matcher.matches()) {
+            Set<String> types = new LinkedHashSet<String>();
+            types.add(matcher.group(1));
+            return types;
+        }
+        matcher = TYPE_IN.matcher(selector);
+        if (!matcher.matches()) {
+            return null;
+        }
+        Set<String> types = new LinkedHashSet<String>();
+        Matcher quoted = QUOTED.matcher(matcher.group(1));
+        while (quoted.find()) {
+            types.add(quoted.group(1));
+        }
+        return types;
+    }
+
+    /**
+     * Add the endpoint of the types
+     *
+     * @param endpoint the endpoint
+     * @param types the JMSTypes of the endpoint
+     * @return false if any type is dispatched to another endpoint
+     */
+    public synchronized boolean addEndpoint(MethodJmsListenerEndpointAdapter endpoint, Set<String> types) {
+        for (String type : types) {
+            if (endpoints.containsKey(type)) {
+                return false;
+            }
+        }
+        for (String type : types) {
+            endpoints.put(type, endpoint);
+        }
+        mergeConcurrency(endpoint.getConcurrency());
+        setSelector(buildSelector());
+        if (null != container) {
+            for (String type : types) {
+                dispatcher.register(type, endpoint.createDispatchedListener(container));
+            }
+            updateContainer();
+        }
+        return true;
+    }
+
+    private void mergeConcurrency(String concurrency) {
+        if (StringUtils.isBlank(concurrency)) {
+            return;
+        }
+        if (StringUtils.isBlank(getConcurrency())
+                || maxConcurrency(concurrency) > maxConcurrency(getConcurrency())) {
+            setConcurrency(concurrency);
+        }
+    }
+
+    private static int maxConcurrency(String concurrency) {
+        String max = StringUtils.contains(concurrency, "-") ? StringUtils.substringAfter(concurrency, "-")
+                : concurrency;
+        return Integer.parseInt(max.trim());
+    }
+
+    private String buildSelector() {
+        StringBuilder selector = new StringBuilder("JMSType IN (");
+        boolean first = true;
+        for (String type : endpoints.keySet()) {
+            if (!first) {
+                selector.append(", ");
+            }
+            selector.append('\'').append(type).append('\'');
+            first = false;
+        }
+        return selector.append(')').toString();
+    }
+
+    private void updateContainer() {
+        if (container instanceof AbstractMessageListenerContainer) {
+            ((AbstractMessageListenerContainer) container).setMessageSelector(getSelector());
+        }
+        if (container instanceof DefaultMessageListenerContainer && StringUtils.isNotBlank(getConcurrency())) {
+            ((DefaultMessageListenerContainer) container).setConcurrency(getConcurrency());
+        }
+    }
+
+    @Override
+    protected synchronized MessageListener createMessageListener(MessageListenerContainer container) {
+        this.container = container;
+        for (Map.Entry<String, MethodJmsListenerEndpointAdapter> entry : endpoints.entrySet()) {
+            dispatcher.register(entry.getKey(), entry.getValue().createDispatchedListener(container));
+        }
+        return dispatcher;
+    }
+
+    public synchronized List<String> getEndpointIds() {
+        List<String> endpointIds = new ArrayList<String>();
+        for (MethodJmsListenerEndpointAdapter endpoint : new LinkedHashSet<MethodJmsListenerEndpointAdapter>(
+                endpoints.values())) {
+            endpointIds.add(endpoint.getId());
+        }
+        return endpointIds;
+    }
+
+    private static class TypeDispatcher implements MessageListener, SessionAwareMessageListener<Message> {
+
+        private final Map<String, SessionAwareMessageListener<Message>> listeners =
+                new ConcurrentHashMap<String, SessionAwareMessageListener<Message>>();
+
+        void register(String type, SessionAwareMessageListener<Message> listener) {
+            listeners.put(type, listener);
+        }
+
+        @Override
+        public void onMessage(Message message) {
+            try {
+                onMessage(message, null);
+            } catch (JMSException ex) {
+                throw JmsUtils.convertJmsAccessException(ex);
+            }
+        }
+
+        @Override
+        public void onMessage(Message message, Session session) throws JMSException {
+            String type = message.getJMSType();
+            SessionAwareMessageListener<Message> listener = null == type ? null : listeners.get(type);
+            if (null == listener) {
+                throw new JmsException(String.format("NOT FOUND the listener of the JMSType (%s)", type));
+            }
+            listener.onMessage(message, session);
+        }
+    }
+
+}
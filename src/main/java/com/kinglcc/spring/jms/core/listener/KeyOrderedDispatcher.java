@@ -0,0 +1,218 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.listener;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+/**
+ * KeyOrderedDispatcher
+ * <pre>
+ * Dispatch the messages received by one consumer to the single-threaded workers,
+ * the worker is selected by the hash of the message group (JMSType), so the messages
+ * of one group are handled in order.
+ * The messages are dispatched in batches: the receiver commits a batch only when
+ * all the messages of it have been handled, because the JMS session acknowledges
+ * all the messages it delivered. A batch is completed when it is full, or when its first
+ * message is older than the maximum batch age, so a slow trickle of messages is not left
+ * unacknowledged. Once a message failed, the rest of the batch is
+ * skipped and the whole batch should be rolled back.
+ * The messages are handled without the session, the session is used only by the receiver.
+ * </pre>
+ * @see JmsKeyOrdered
+ *
+ * @author liaochaochao
+ * @since 2016年3月14日 下午4:41:56
+ */
+public class KeyOrderedDispatcher {
+
+    private final ExecutorService[] workers;
+    private final int batchSize;
+    private final long maxBatchAge;
+    private final Object monitor = new Object();
+
+    private Batch batch = new Batch();
+
+    public KeyOrderedDispatcher(String name, int workerCount, int batchSize, long maxBatchAge) {
+        Assert.isTrue(batchSize > 0, "'batchSize' must be greater than 0");
+        Assert.isTrue(maxBatchAge > 0, "'maxBatchAge' must be greater than 0");
+        int count = workerCount > 0 ? workerCount : Runtime.getRuntime().availableProcessors();
+        this.workers = new ExecutorService[count];
+        for (int i = 0; i < count; i++) {
+            workers[i] = Executors.newSingleThreadExecutor(new CustomizableThreadFactory(name + "-" + i + "-"));
+        }
+        this.batchSize = batchSize;
+        this.maxBatchAge = maxBatchAge;
+    }
+
+    /**
+     * Dispatch the message to the worker of its group, called by the receiver thread
+     *
+     * @param message the received message
+     * @param handler the handler of the message
+     * @throws JMSException if the message group can't be read
+     */
+    public void dispatch(final Message message, final MessageHandler handler) throws JMSException {
+        final Batch current;
+        synchronized (monitor) {
+            current = batch;
+            if (current.dispatched == 0) {
+                current.startTime = System.currentTimeMillis();
+            }
+            current.dispatched++;
+            current.lastMessage = message;
+        }
+        selectWorker(message).execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    if (null == current.failure) {
+                        handler.handle(message);
+                    }
+                } catch (Throwable ex) {
+                    current.failure = ex;
+                } finally {
+                    complete(current);
+                }
+            }
+        });
+    }
+
+    private ExecutorService selectWorker(Message message) throws JMSException {
+        String key = message.getJMSType();
+        if (null == key) {
+            key = message.getJMSMessageID();
+        }
+        int hash = null == key ? 0 : key.hashCode();
+        return workers[(hash & Integer.MAX_VALUE) % workers.length];
+    }
+
+    private void complete(Batch completedBatch) {
+        synchronized (monitor) {
+            completedBatch.completed++;
+            if (completedBatch.completed == completedBatch.dispatched) {
+                monitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * The batch is due when it is full or its first message has reached the maximum batch age
+     *
+     * @return true if the current batch should be completed now
+     */
+    public boolean isBatchDue() {
+        synchronized (monitor) {
+            return batch.dispatched >= batchSize || (batch.dispatched > 0 && getBatchAgeRemaining() == 0);
+        }
+    }
+
+    /**
+     * The time left until the current batch reaches the maximum batch age
+     *
+     * @return the remaining milliseconds, or -1 if the current batch is empty
+     */
+    public long getBatchAgeRemaining() {
+        synchronized (monitor) {
+            if (batch.dispatched == 0) {
+                return -1;
+            }
+            long elapsed = System.currentTimeMillis() - batch.startTime;
+            return Math.max(0, maxBatchAge - elapsed);
+        }
+    }
+
+    public boolean hasPending() {
+        synchronized (monitor) {
+            return batch.dispatched > 0;
+        }
+    }
+
+    public boolean hasFailed() {
+        synchronized (monitor) {
+            return null != batch.failure;
+        }
+    }
+
+    public Message getLastMessage() {
+        synchronized (monitor) {
+            return batch.lastMessage;
+        }
+    }
+
+    /**
+     * Wait until all the messages of the current batch have been handled, then start a new batch
+     *
+     * @return the failure of the batch, or null if all the messages succeeded
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Throwable awaitBatch() throws InterruptedException {
+        synchronized (monitor) {
+            Batch current = batch;
+            while (current.completed < current.dispatched) {
+                monitor.wait();
+            }
+            batch = new Batch();
+            return current.failure;
+        }
+    }
+
+    /**
+     * Give up the current batch without waiting, the messages not handled yet are skipped,
+     * and a new batch is started, the batch should be rolled back
+     */
+    public void abortBatch() {
+        synchronized (monitor) {
+            if (null == batch.failure) {
+                batch.failure = new IllegalStateException("The batch is aborted");
+            }
+            batch = new Batch();
+        }
+    }
+
+    public void shutdown() {
+        for (ExecutorService worker : workers) {
+            worker.shutdown();
+        }
+    }
+
+    private static class Batch {
+
+        private int dispatched;
+        private int completed;
+        private long startTime;
+        private Message lastMessage;
+        private volatile Throwable failure;
+    }
+
+    /**
+     * MessageHandler
+     * <pre>Handle the message in the worker thread</pre>
+     */
+    public interface MessageHandler {
+
+        void handle(Message message) throws Exception;
+
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.listener;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram
+ * <pre>
+ * A lock-free histogram of the latencies in microseconds with power-of-two buckets,
+ * the percentiles are the upper bounds of the buckets, so the error is less than twice.
+ * The negative latencies of the skewed clocks are recorded as zero.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月24日 上午10:12:36
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long micros) {
+        long latency = Math.max(0, micros);
+        counts.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(latency)));
+        count.incrementAndGet();
+        sum.addAndGet(latency);
+        long current = max.get();
+        while (latency > current && !max.compareAndSet(current, latency)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * The latency of the percentile in microseconds
+     *
+     * @param percentile the percentile, between 0 and 1
+     * @return the latency, 0 if nothing recorded
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        long rank = (long) Math.ceil(total * percentile);
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulative += snapshot[i];
+            if (cumulative >= rank && snapshot[i] > 0) {
+                return Math.min((1L << i) - 1, max.get());
+            }
+        }
+        return 0;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public long getMean() {
+        long total = count.get();
+        return total == 0 ? 0 : sum.get() / total;
+    }
+
+    /**
+     * The count, the mean, the percentiles and the max, the latencies are in milliseconds
+     *
+     * @return the snapshot
+     */
+    public Map<String, Object> getSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<String, Object>();
+        snapshot.put("count", getCount());
+        snapshot.put("mean", toMillis(getMean()));
+        snapshot.put("p50", toMillis(getPercentile(0.5)));
+        snapshot.put("p90", toMillis(getPercentile(0.9)));
+        snapshot.put("p99", toMillis(getPercentile(0.99)));
+        snapshot.put("max", toMillis(getMax()));
+        return snapshot;
+    }
+
+    private static double toMillis(long micros) {
+        return micros / 1000.0;
+    }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.listener;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * LatencyTracker
+ * <pre>
+ * Track the latency from the producer to the consumer of each destination,
+ * by the high-resolution {@link #SEND_TIMESTAMP_PROP} stamped by the sender if present,
+ * otherwise by the JMSTimestamp, see {@link LatencyHistogram}.
+ * Track the age of the oldest in-flight message of each endpoint, so the consumer lag
+ * shows up while the messages are handled, before the queue is piled up.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月24日 上午10:45:08
+ */
+@ManagedResource(description = "The broker latency and the consumer lag of the jms listeners")
+public class LatencyTracker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LatencyTracker.class);
+
+    /** The send time in microseconds since the epoch */
+    public static final String SEND_TIMESTAMP_PROP = "sendTimestamp@";
+
+    private static volatile long[] clockBase = { System.currentTimeMillis() * 1000, System.nanoTime() };
+
+    private final ConcurrentMap<String, LatencyHistogram> histograms =
+            new ConcurrentHashMap<String, LatencyHistogram>();
+    private final ConcurrentMap<String, Map<Message, Long>> inFlightMessages =
+            new ConcurrentHashMap<String, Map<Message, Long>>();
+
+    /**
+     * The wall clock in microseconds, interpolated by the nano time
+     * and recalibrated when it drifts from the millisecond clock
+     *
+     * @return the current time in microseconds
+     */
+    public static long currentTimeMicros() {
+        long[] base = clockBase;
+        long nanos = System.nanoTime();
+        long millis = System.currentTimeMillis();
+        long micros = base[0] + (nanos - base[1]) / 1000;
+        if (Math.abs(micros / 1000 - millis) > 1) {
+            micros = millis * 1000;
+            clockBase = new long[] { micros, nanos };
+        }
+        return micros;
+    }
+
+    private static long getSendTimeMicros(Message message) throws JMSException {
+        if (message.propertyExists(SEND_TIMESTAMP_PROP)) {
+            return message.getLongProperty(SEND_TIMESTAMP_PROP);
+        }
+        return TimeUnit.MILLISECONDS.toMicros(message.getJMSTimestamp());
+    }
+
+    /**
+     * Record the broker latency of the received message, and track it until completed
+     *
+     * @param endpointId the endpoint id
+     * @param destination the destination of the endpoint
+     * @param message the received message
+     */
+    public void received(String endpointId, String destination, Message message) {
+        long sendTime;
+        try {
+            sendTime = getSendTimeMicros(message);
+        } catch (JMSException ex) {
+            LOGGER.debug("Could not read the send time of the message", ex);
+            return;
+        }
+        if (sendTime <= 0) {
+            return;
+        }
+        getHistogram(destination).record(currentTimeMicros() - sendTime);
+        getInFlightMessages(endpointId).put(message, sendTime);
+    }
+
+    public void completed(String endpointId, Message message) {
+        Map<Message, Long> messages = inFlightMessages.get(endpointId);
+        if (null != messages) {
+            messages.remove(message);
+        }
+    }
+
+    private LatencyHistogram getHistogram(String destination) {
+        LatencyHistogram histogram = histograms.get(destination);
+        if (null == histogram) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = histograms.putIfAbsent(destination, created);
+            if (null == histogram) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    private Map<Message, Long> getInFlightMessages(String endpointId) {
+        Map<Message, Long> messages = inFlightMessages.get(endpointId);
+        if (null == messages) {
+            Map<Message, Long> created = Collections.synchronizedMap(new IdentityHashMap<Message, Long>());
+            messages = inFlightMessages.putIfAbsent(endpointId, created);
+            if (null == messages) {
+                messages = created;
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * The broker latency of the destination
+     *
+     * @param destination the destination
+     * @return the snapshot of the histogram, null if no message received
+     */
+    public Map<String, Object> getBrokerLatency(String destination) {
+        LatencyHistogram histogram = histograms.get(destination);
+        return null == histogram ? null : histogram.getSnapshot();
+    }
+
+    /**
+     * The age of the oldest in-flight message of the endpoint
+     *
+     * @param endpointId the endpoint id
+     * @return the age in milliseconds, 0 if no message in flight
+     */
+    public long getOldestInFlightAge(String endpointId) {
+        Map<Message, Long> messages = inFlightMessages.get(endpointId);
+        if (null == messages) {
+            return 0;
+        }
+        long oldest = Long.MAX_VALUE;
+        synchronized (messages) {
+            for (Long sendTime : messages.values()) {
+                oldest = Math.min(oldest, sendTime);
+            }
+        }
+        if (oldest == Long.MAX_VALUE) {
+            return 0;
+        }
+        return Math.max(0, TimeUnit.MICROSECONDS.toMillis(currentTimeMicros() - oldest));
+    }
+
+    @ManagedAttribute(description = "The broker latencies of each destination in milliseconds")
+    public Map<String, Map<String, Object>> getBrokerLatencies() {
+        Map<String, Map<String, Object>> latencies = new TreeMap<String, Map<String, Object>>();
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            latencies.put(entry.getKey(), entry.getValue().getSnapshot());
+        }
+        return latencies;
+    }
+
+    @ManagedAttribute(description = "The age of the oldest in-flight message of each endpoint in milliseconds")
+    public Map<String, Long> getOldestInFlightAges() {
+        Map<String, Long> ages = new LinkedHashMap<String, Long>();
+        for (String endpointId : inFlightMessages.keySet()) {
+            ages.put(endpointId, getOldestInFlightAge(endpointId));
+        }
+        return ages;
+    }
+
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.listener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jms.listener.MessageListenerContainer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import com.kinglcc.spring.jms.JmsException;
+
+/**
+ * ListenerContainerStarter
+ * <pre>
+ * Initialize and start the listener containers in parallel with a bounded pool,
+ * each container connects, resolves the destination and creates the consumers
+ * in its own startup task. The containers of {@link JmsLazyStartup} are started
+ * after the application context has been refreshed.
+ * The startup time of each container is reported.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月18日 下午4:40:26
+ */
+public class ListenerContainerStarter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ListenerContainerStarter.class);
+
+    private final Map<String, MessageListenerContainer> containers =
+            new LinkedHashMap<String, MessageListenerContainer>();
+    private final Map<String, MessageListenerContainer> lazyContainers =
+            new LinkedHashMap<String, MessageListenerContainer>();
+    private final Map<String, Long> startupTimes = Collections.synchronizedMap(new LinkedHashMap<String, Long>());
+    private final List<MessageListenerContainer> initialized = new ArrayList<MessageListenerContainer>();
+
+    private int threads = 4;
+    private long lazyDelay;
+    private boolean lazyStarted;
+
+    public synchronized void register(String id, MessageListenerContainer container, boolean lazy) {
+        (lazy ? lazyContainers : containers).put(id, container);
+    }
+
+    /**
+     * Start the containers except the lazy ones not started yet, and wait for all of them
+     */
+    public void start() {
+        Map<String, MessageListenerContainer> startups;
+        synchronized (this) {
+            startups = new LinkedHashMap<String, MessageListenerContainer>(containers);
+            if (lazyStarted) {
+                startups.putAll(lazyContainers);
+            }
+        }
+        if (startups.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        ExecutorService executor = createExecutor(startups.size());
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>(startups.size());
+            for (Map.Entry<String, MessageListenerContainer> entry : startups.entrySet()) {
+                futures.add(executor.submit(startupTask(entry.getKey(), entry.getValue())));
+            }
+            awaitStartup(futures);
+        } finally {
+            executor.shutdown();
+        }
+        LOGGER.info("Started {} jms listener containers in {}ms with {} threads", startups.size(),
+                System.currentTimeMillis() - start, Math.min(threads, startups.size()));
+    }
+
+    /**
+     * Start the lazy containers in background, only the first call takes effect
+     */
+    public void startLazy() {
+        final Map<String, MessageListenerContainer> startups;
+        synchronized (this) {
+            if (lazyStarted || lazyContainers.isEmpty()) {
+                return;
+            }
+            lazyStarted = true;
+            startups = new LinkedHashMap<String, MessageListenerContainer>(lazyContainers);
+        }
+        final ExecutorService executor = createExecutor(startups.size());
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(lazyDelay);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (Map.Entry<String, MessageListenerContainer> entry : startups.entrySet()) {
+                    executor.execute(startupTask(entry.getKey(), entry.getValue()));
+                }
+                executor.shutdown();
+            }
+        });
+    }
+
+    private ExecutorService createExecutor(int tasks) {
+        return Executors.newFixedThreadPool(Math.max(1, Math.min(threads, tasks)),
+                new CustomizableThreadFactory("jmsContainerStartup-"));
+    }
+
+    private Runnable startupTask(final String id, final MessageListenerContainer container) {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                long start = System.currentTimeMillis();
+                try {
+                    initialize(id, container);
+                    if (container.isAutoStartup()) {
+                        container.start();
+                    }
+                } catch (RuntimeException ex) {
+                    LOGGER.error("Failed to start the jms listener container {}", id, ex);
+                    throw ex;
+                }
+                long elapsed = System.currentTimeMillis() - start;
+                startupTimes.put(id, elapsed);
+                LOGGER.info("Started the jms listener container {} in {}ms", id, elapsed);
+            }
+        };
+    }
+
+    private void initialize(String id, MessageListenerContainer container) {
+        synchronized (this) {
+            if (initialized.contains(container)) {
+                return;
+            }
+            initialized.add(container);
+        }
+        if (container instanceof InitializingBean) {
+            try {
+                ((InitializingBean) container).afterPropertiesSet();
+            } catch (Exception ex) {
+                throw new JmsException("Failed to initialize message listener container " + id, ex);
+            }
+        }
+    }
+
+    private void awaitStartup(List<Future<?>> futures) {
+        RuntimeException failure = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new JmsException("Interrupted while starting the jms listener containers", ex);
+            } catch (ExecutionException ex) {
+                if (null == failure) {
+                    failure = ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause()
+                            : new JmsException("Failed to start the jms listener containers", ex.getCause());
+                }
+            }
+        }
+        if (null != failure) {
+            throw failure;
+        }
+    }
+
+    /**
+     * The startup time of each started container in milliseconds, by the endpoint id
+     *
+     * @return the startup times
+     */
+    public Map<String, Long> getStartupTimes() {
+        synchronized (startupTimes) {
+            return new LinkedHashMap<String, Long>(startupTimes);
+        }
+    }
+
+    /**
+     * The number of threads to start the containers, 1 to start them one after another
+     *
+     * @param threads the number of threads
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * The delay to start the lazy containers after the application context has been refreshed
+     *
+     * @param lazyDelay the delay in milliseconds
+     */
+    public void setLazyDelay(long lazyDelay) {
+        this.lazyDelay = lazyDelay;
+    }
+
+}
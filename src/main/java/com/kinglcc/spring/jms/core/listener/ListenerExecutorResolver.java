@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.listener;
+
+import java.lang.reflect.Method;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.ReflectionUtils;
+
+import com.kinglcc.spring.jms.JmsException;
+
+/**
+ * ListenerExecutorResolver
+ * <pre>
+ * Resolve the task executor for each jms listener container.
+ * The isolated thread pools and virtual thread executors are created here,
+ * and shut down when destroyed.
+ * </pre>
+ * @see JmsListenerExecutor
+ *
+ * @author liaochaochao
+ * @since 2016年3月10日 下午2:51:07
+ */
+public class ListenerExecutorResolver implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ListenerExecutorResolver.class);
+
+    private static final Method VIRTUAL_THREAD_EXECUTOR_METHOD =
+            ReflectionUtils.findMethod(java.util.concurrent.Executors.class, "newVirtualThreadPerTaskExecutor");
+
+    private final List<ThreadPoolTaskExecutor> threadPools = new LinkedList<ThreadPoolTaskExecutor>();
+    private final List<ExecutorService> executorServices = new LinkedList<ExecutorService>();
+
+    private BeanFactory beanFactory;
+    private boolean virtualThreads;
+
+    /**
+     * Resolve the executor of the listener
+     *
+     * @param endpointId the id of the jms listener endpoint
+     * @param annotation the executor annotation of the listener method, may be null
+     * @return the executor, or null to use the default executor of the container
+     */
+    public synchronized Executor resolveExecutor(String endpointId, JmsListenerExecutor annotation) {
+        if (null != annotation) {
+            if (StringUtils.isNotBlank(annotation.value())) {
+                return resolveExecutorBean(annotation.value());
+            }
+            if (annotation.poolSize() > 0) {
+                return createThreadPool(endpointId, annotation.poolSize());
+            }
+            if (annotation.virtualThreads()) {
+                return createVirtualThreadExecutor(endpointId);
+            }
+        }
+        if (virtualThreads) {
+            return createVirtualThreadExecutor(endpointId);
+        }
+        return null;
+    }
+
+    private Executor resolveExecutorBean(String executorName) {
+        if (null == beanFactory) {
+            throw new JmsException(String.format("NOT FOUND the executor named (%s)", executorName));
+        }
+        return beanFactory.getBean(executorName, Executor.class);
+    }
+
+    private Executor createThreadPool(String endpointId, int poolSize) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setThreadNamePrefix(endpointId + "-");
+        executor.setBeanName(endpointId);
+        executor.initialize();
+        threadPools.add(executor);
+        return executor;
+    }
+
+    private Executor createVirtualThreadExecutor(String endpointId) {
+        if (!isVirtualThreadsSupported()) {
+            LOGGER.warn("Virtual threads are not supported, use the default executor for {}", endpointId);
+            return null;
+        }
+        ExecutorService executor =
+                (ExecutorService) ReflectionUtils.invokeMethod(VIRTUAL_THREAD_EXECUTOR_METHOD, null);
+        executorServices.add(executor);
+        return executor;
+    }
+
+    public static boolean isVirtualThreadsSupported() {
+        return null != VIRTUAL_THREAD_EXECUTOR_METHOD;
+    }
+
+    public void setBeanFactory(BeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
+    /**
+     * Use virtual threads for all the listener containers without {@link JmsListenerExecutor}
+     *
+     * @param virtualThreads use virtual threads or not
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    @Override
+    public synchronized void destroy() {
+        for (ThreadPoolTaskExecutor executor : threadPools) {
+            executor.shutdown();
+        }
+        for (ExecutorService executor : executorServices) {
+            executor.shutdown();
+        }
+        threadPools.clear();
+        executorServices.clear();
+    }
+
+}
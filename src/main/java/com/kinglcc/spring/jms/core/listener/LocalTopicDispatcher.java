@@ -0,0 +1,197 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.listener;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jms.listener.SessionAwareMessageListener;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import com.kinglcc.spring.jms.core.DestinationType;
+
+/**
+ * LocalTopicDispatcher
+ * <pre>
+ * Deliver the messages sent to a non-durable topic to the listeners of the same JVM
+ * without the broker. The broker copy is still sent for the remote subscribers, and
+ * marked with the {@link #LOCAL_ORIGIN_PROP} of this node, so the local listener
+ * containers don't receive it again, see {@link #getLocalOriginSelector()}.
+ * The sent message is delivered only after the send succeeded or committed, to the same
+ * listener as the container, so the filters, the conversion and the latency tracking apply.
+ * The sent message is copied in the producer thread, see {@link LocalTopicMessage}, and each
+ * listener converts its own copy of the body. If delivered by reference, the sent object is
+ * handed to the listeners whose parameter accepts it without serialization, the listeners
+ * share the instance with the sender and should not modify it.
+ * The listeners of one message are invoked in turn without the session, they can't reply.
+ * A failed delivery is not retried, it's logged and counted.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月16日 上午10:27:50
+ */
+@ManagedResource(description = "The local delivery of the topic messages")
+public class LocalTopicDispatcher implements InitializingBean, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalTopicDispatcher.class);
+
+    public static final String LOCAL_ORIGIN_PROP = "localOriginNode";
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ConcurrentMap<String, List<SessionAwareMessageListener<Message>>> listeners =
+            new ConcurrentHashMap<String, List<SessionAwareMessageListener<Message>>>();
+    private final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    private final AtomicLong deliveredMessages = new AtomicLong();
+    private final AtomicLong failedDeliveries = new AtomicLong();
+
+    private int poolSize = 4;
+    private boolean byReference;
+
+    /**
+     * Whether the local delivery supports the destination, only the non-durable topic is supported
+     *
+     * @param destinationName the destination name with type
+     * @return true if supported
+     */
+    public static boolean supports(String destinationName) {
+        return DestinationType.TOPIC == DestinationType.asDestinationType(destinationName);
+    }
+
+    /**
+     * Register the listener of the container of the topic
+     *
+     * @param destinationName the destination name with type
+     * @param listener the message listener of the container
+     */
+    public void register(String destinationName, SessionAwareMessageListener<Message> listener) {
+        String topicName = DestinationType.TOPIC.getDestinationName(destinationName);
+        List<SessionAwareMessageListener<Message>> topicListeners =
+                new CopyOnWriteArrayList<SessionAwareMessageListener<Message>>();
+        List<SessionAwareMessageListener<Message>> existing = listeners.putIfAbsent(topicName, topicListeners);
+        (null == existing ? topicListeners : existing).add(listener);
+    }
+
+    public boolean hasListeners(String destinationName) {
+        return supports(destinationName)
+                && listeners.containsKey(DestinationType.TOPIC.getDestinationName(destinationName));
+    }
+
+    /**
+     * Copy the sent message for the local delivery, call it right after the send,
+     * in the thread of the producer session
+     *
+     * @param sentMessage the sent message
+     * @param payload the sent object, nullable
+     * @return the copy to deliver
+     * @throws JMSException if the message can't be copied
+     */
+    public LocalTopicMessage copyOf(Message sentMessage, Object payload) throws JMSException {
+        return LocalTopicMessage.copyOf(sentMessage, byReference ? payload : null);
+    }
+
+    /**
+     * Deliver the copy of the sent message to the local listeners of the topic asynchronously,
+     * call it only after the message is sent or committed
+     *
+     * @param destinationName the destination name with type
+     * @param message the copy of the sent message, see {@link #copyOf(Message, Object)}
+     */
+    public void deliver(final String destinationName, final LocalTopicMessage message) {
+        final List<SessionAwareMessageListener<Message>> topicListeners =
+                listeners.get(DestinationType.TOPIC.getDestinationName(destinationName));
+        if (null == topicListeners) {
+            return;
+        }
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                for (SessionAwareMessageListener<Message> listener : topicListeners) {
+                    try {
+                        listener.onMessage(message.copy(), null);
+                        deliveredMessages.incrementAndGet();
+                    } catch (Exception ex) {
+                        failedDeliveries.incrementAndGet();
+                        LOGGER.error("Local delivery to {} error", destinationName, ex);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * The selector of the local listener containers, ignore the broker copy sent by this node
+     *
+     * @return the message selector
+     */
+    public String getLocalOriginSelector() {
+        return LOCAL_ORIGIN_PROP + " IS NULL OR " + LOCAL_ORIGIN_PROP + " <> '" + nodeId + "'";
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @ManagedAttribute(description = "The number of messages delivered to the local listeners")
+    public long getDeliveredMessages() {
+        return deliveredMessages.get();
+    }
+
+    @ManagedAttribute(description = "The number of failed local deliveries")
+    public long getFailedDeliveries() {
+        return failedDeliveries.get();
+    }
+
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    /**
+     * Hand the sent object to the local listeners without serialization
+     *
+     * @param byReference deliver the sent object by reference or not
+     */
+    public void setByReference(boolean byReference) {
+        this.byReference = byReference;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setThreadNamePrefix("jmsLocalDelivery-");
+        executor.initialize();
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+
+}
@@ -0,0 +1,651 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.listener;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.jms.BytesMessage;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageEOFException;
+import javax.jms.MessageFormatException;
+import javax.jms.MessageNotWriteableException;
+import javax.jms.TextMessage;
+
+/**
+ * LocalTopicMessage
+ * <pre>
+ * The read-only copy of a sent message for the local delivery, see {@link LocalTopicDispatcher}.
+ * The headers, the properties and the body are copied when the message is sent, so the local
+ * listeners never touch the message of the producer session. Each listener gets its own copy
+ * from {@link #copy()}, the body of a bytes message is read from its own position.
+ * The sent object is kept as the payload if it's delivered by reference.
+ * Only the text and the bytes messages are supported.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月16日 上午10:27:50
+ */
+public abstract class LocalTopicMessage implements Message {
+
+    private final String messageId;
+    private final long timestamp;
+    private final String correlationId;
+    private final Destination replyTo;
+    private final Destination destination;
+    private final int deliveryMode;
+    private final String type;
+    private final long expiration;
+    private final int priority;
+    private final Map<String, Object> properties;
+    private final Object payload;
+
+    protected LocalTopicMessage(Message message, Object payload) throws JMSException {
+        this.messageId = message.getJMSMessageID();
+        this.timestamp = message.getJMSTimestamp();
+        this.correlationId = message.getJMSCorrelationID();
+        this.replyTo = message.getJMSReplyTo();
+        this.destination = message.getJMSDestination();
+        this.deliveryMode = message.getJMSDeliveryMode();
+        this.type = message.getJMSType();
+        this.expiration = message.getJMSExpiration();
+        this.priority = message.getJMSPriority();
+        Map<String, Object> props = new HashMap<String, Object>();
+        Enumeration<?> names = message.getPropertyNames();
+        while (names.hasMoreElements()) {
+            String name = (String) names.nextElement();
+            props.put(name, message.getObjectProperty(name));
+        }
+        this.properties = Collections.unmodifiableMap(props);
+        this.payload = payload;
+    }
+
+    protected LocalTopicMessage(LocalTopicMessage source) {
+        this.messageId = source.messageId;
+        this.timestamp = source.timestamp;
+        this.correlationId = source.correlationId;
+        this.replyTo = source.replyTo;
+        this.destination = source.destination;
+        this.deliveryMode = source.deliveryMode;
+        this.type = source.type;
+        this.expiration = source.expiration;
+        this.priority = source.priority;
+        this.properties = source.properties;
+        this.payload = source.payload;
+    }
+
+    /**
+     * Copy the sent message, call it in the thread of the producer session right after the send
+     *
+     * @param message the sent message
+     * @param payload the sent object passed by reference, or null to convert the body
+     * @return the read-only copy
+     * @throws JMSException if the message can't be read, or it's neither a text nor a bytes message
+     */
+    public static LocalTopicMessage copyOf(Message message, Object payload) throws JMSException {
+        if (message instanceof TextMessage) {
+            return new LocalTextMessage((TextMessage) message, payload);
+        }
+        if (message instanceof BytesMessage) {
+            return new LocalBytesMessage((BytesMessage) message, payload);
+        }
+        throw new MessageFormatException("The local delivery supports only the text and the bytes messages, not "
+                + message.getClass().getName());
+    }
+
+    /**
+     * The copy for one listener, which shares the body but not the read position
+     *
+     * @return the copy of the message
+     */
+    public abstract LocalTopicMessage copy();
+
+    /**
+     * The sent object if the message is delivered by reference
+     *
+     * @return the sent object, or null if the body should be converted
+     */
+    public Object getPayload() {
+        return payload;
+    }
+
+    @Override
+    public String getJMSMessageID() {
+        return messageId;
+    }
+
+    @Override
+    public long getJMSTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public byte[] getJMSCorrelationIDAsBytes() {
+        return null == correlationId ? null : correlationId.getBytes();
+    }
+
+    @Override
+    public String getJMSCorrelationID() {
+        return correlationId;
+    }
+
+    @Override
+    public Destination getJMSReplyTo() {
+        return replyTo;
+    }
+
+    @Override
+    public Destination getJMSDestination() {
+        return destination;
+    }
+
+    @Override
+    public int getJMSDeliveryMode() {
+        return deliveryMode;
+    }
+
+    @Override
+    public boolean getJMSRedelivered() {
+        return false;
+    }
+
+    @Override
+    public String getJMSType() {
+        return type;
+    }
+
+    @Override
+    public long getJMSExpiration() {
+        return expiration;
+    }
+
+    @Override
+    public int getJMSPriority() {
+        return priority;
+    }
+
+    @Override
+    public boolean propertyExists(String name) {
+        return properties.containsKey(name);
+    }
+
+    @Override
+    public boolean getBooleanProperty(String name) throws JMSException {
+        Object value = properties.get(name);
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        return Boolean.valueOf(asString(name, value));
+    }
+
+    @Override
+    public byte getByteProperty(String name) throws JMSException {
+        Object value = properties.get(name);
+        if (value instanceof Byte) {
+            return (Byte) value;
+        }
+        return Byte.valueOf(asString(name, value));
+    }
+
+    @Override
+    public short getShortProperty(String name) throws JMSException {
+        Object value = properties.get(name);
+        if (value instanceof Short || value instanceof Byte) {
+            return ((Number) value).shortValue();
+        }
+        return Short.valueOf(asString(name, value));
+    }
+
+    @Override
+    public int getIntProperty(String name) throws JMSException {
+        Object value = properties.get(name);
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).intValue();
+        }
+        return Integer.valueOf(asString(name, value));
+    }
+
+    @Override
+    public long getLongProperty(String name) throws JMSException {
+        Object value = properties.get(name);
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        return Long.valueOf(asString(name, value));
+    }
+
+    @Override
+    public float getFloatProperty(String name) throws JMSException {
+        Object value = properties.get(name);
+        if (value instanceof Float) {
+            return (Float) value;
+        }
+        return Float.valueOf(asString(name, value));
+    }
+
+    @Override
+    public double getDoubleProperty(String name) throws JMSException {
+        Object value = properties.get(name);
+        if (value instanceof Double || value instanceof Float) {
+            return ((Number) value).doubleValue();
+        }
+        return Double.valueOf(asString(name, value));
+    }
+
+    @Override
+    public String getStringProperty(String name) {
+        Object value = properties.get(name);
+        return null == value ? null : value.toString();
+    }
+
+    @Override
+    public Object getObjectProperty(String name) {
+        return properties.get(name);
+    }
+
+    @Override
+    public Enumeration<String> getPropertyNames() {
+        return Collections.enumeration(properties.keySet());
+    }
+
+    private static String asString(String name, Object value) throws JMSException {
+        if (null == value || value instanceof String) {
+            return (String) value;
+        }
+        throw new MessageFormatException("The property " + name + " can't be converted from "
+                + value.getClass().getSimpleName());
+    }
+
+    @Override
+    public void acknowledge() {
+        // the local delivery is not acknowledged
+    }
+
+    @Override
+    public void setJMSMessageID(String id) throws JMSException {
+        throw readOnly();
+    }
+
+    @Override
+    public void setJMSTimestamp(long timestamp) throws JMSException {
+        throw readOnly();
+    }
+
+    @Override
+    public void setJMSCorrelationIDAsBytes(byte[] correlationId) throws JMSException {
+        throw readOnly();
+    }
+
+    @Override
+    public void setJMSCorrelationID(String correlationId) throws JMSException {
+        throw readOnly();
+    }
+
+    @Override
+    public void setJMSReplyTo(Destination replyTo) throws JMSException {
+        throw readOnly();
+    }
+
+    @Override
+    public void setJMSDestination(Destination destination) throws JMSException {
+        throw readOnly();
+    }
+
+    @Override
+    public void setJMSDeliveryMode(int deliveryMode) throws JMSException {
+        throw readOnly();
+    }
+
+    @Override
+    public void setJMSRedelivered(boolean redelivered) throws JMSException {
+        throw readOnly();
+    }
+
+    @Override
+    public void setJMSType(String type) throws JMSException {
+        throw readOnly();
+    }
+
+    @Override
+    public void setJMSExpiration(long expiration) throws JMSException {
+        throw readOnly();
+    }
+
+    @Override
+    public void setJMSPriority(int priority) throws JMSException {
+        throw readOnly();
+    }
+
+    @Override
+    public void clearProperties() throws JMSException {
+        throw readOnly();
+    }
+
+    @Override
+    public void setBooleanProperty(String name, boolean value) throws JMSException {
+        throw readOnly();
+    }
+
+    @Override
+    public void setByteProperty(String name, byte value) throws JMSException {
+        throw readOnly();
+    }
+
+    @Override
+    public void setShortProperty(String name, short value) throws JMSException {
+        throw readOnly();
+    }
+
+    @Override
+    public void setIntProperty(String name, int value) throws JMSException {
+        throw readOnly();
+    }
+
+    @Override
+    public void setLongProperty(String name, long value) throws JMSException {
+        throw readOnly();
+    }
+
+    @Override
+    public void setFloatProperty(String name, float value) throws JMSException {
+        throw readOnly();
+    }
+
+    @Override
+    public void setDoubleProperty(String name, double value) throws JMSException {
+        throw readOnly();
+    }
+
+    @Override
+    public void setStringProperty(String name, String value) throws JMSException {
+        throw readOnly();
+    }
+
+    @Override
+    public void setObjectProperty(String name, Object value) throws JMSException {
+        throw readOnly();
+    }
+
+    @Override
+    public void clearBody() throws JMSException {
+        throw readOnly();
+    }
+
+    protected static JMSException readOnly() {
+        return new MessageNotWriteableException("The local topic message is read-only");
+    }
+
+    /**
+     * The copy of a text message
+     */
+    static final class LocalTextMessage extends LocalTopicMessage implements TextMessage {
+
+        private final String text;
+
+        LocalTextMessage(TextMessage message, Object payload) throws JMSException {
+            super(message, payload);
+            this.text = message.getText();
+        }
+
+        private LocalTextMessage(LocalTextMessage source) {
+            super(source);
+            this.text = source.text;
+        }
+
+        @Override
+        public LocalTopicMessage copy() {
+            return new LocalTextMessage(this);
+        }
+
+        @Override
+        public String getText() {
+            return text;
+        }
+
+        @Override
+        public void setText(String text) throws JMSException {
+            throw readOnly();
+        }
+    }
+
+    /**
+     * The copy of a bytes message, the body is read by its own stream
+     */
+    static final class LocalBytesMessage extends LocalTopicMessage implements BytesMessage {
+
+        private final byte[] body;
+        private DataInputStream in;
+
+        LocalBytesMessage(BytesMessage message, Object payload) throws JMSException {
+            super(message, payload);
+            message.reset();
+            this.body = new byte[(int) message.getBodyLength()];
+            message.readBytes(body);
+            reset();
+        }
+
+        private LocalBytesMessage(LocalBytesMessage source) {
+            super(source);
+            this.body = source.body;
+            reset();
+        }
+
+        @Override
+        public LocalTopicMessage copy() {
+            return new LocalBytesMessage(this);
+        }
+
+        @Override
+        public void reset() {
+            this.in = new DataInputStream(new ByteArrayInputStream(body));
+        }
+
+        @Override
+        public long getBodyLength() {
+            return body.length;
+        }
+
+        @Override
+        public boolean readBoolean() throws JMSException {
+            try {
+                return in.readBoolean();
+            } catch (IOException ex) {
+                throw readFailure(ex);
+            }
+        }
+
+        @Override
+        public byte readByte() throws JMSException {
+            try {
+                return in.readByte();
+            } catch (IOException ex) {
+                throw readFailure(ex);
+            }
+        }
+
+        @Override
+        public int readUnsignedByte() throws JMSException {
+            try {
+                return in.readUnsignedByte();
+            } catch (IOException ex) {
+                throw readFailure(ex);
+            }
+        }
+
+        @Override
+        public short readShort() throws JMSException {
+            try {
+                return in.readShort();
+            } catch (IOException ex) {
+                throw readFailure(ex);
+            }
+        }
+
+        @Override
+        public int readUnsignedShort() throws JMSException {
+            try {
+                return in.readUnsignedShort();
+            } catch (IOException ex) {
+                throw readFailure(ex);
+            }
+        }
+
+        @Override
+        public char readChar() throws JMSException {
+            try {
+                return in.readChar();
+            } catch (IOException ex) {
+                throw readFailure(ex);
+            }
+        }
+
+        @Override
+        public int readInt() throws JMSException {
+            try {
+                return in.readInt();
+            } catch (IOException ex) {
+                throw readFailure(ex);
+            }
+        }
+
+        @Override
+        public long readLong() throws JMSException {
+            try {
+                return in.readLong();
+            } catch (IOException ex) {
+                throw readFailure(ex);
+            }
+        }
+
+        @Override
+        public float readFloat() throws JMSException {
+            try {
+                return in.readFloat();
+            } catch (IOException ex) {
+                throw readFailure(ex);
+            }
+        }
+
+        @Override
+        public double readDouble() throws JMSException {
+            try {
+                return in.readDouble();
+            } catch (IOException ex) {
+                throw readFailure(ex);
+            }
+        }
+
+        @Override
+        public String readUTF() throws JMSException {
+            try {
+                return in.readUTF();
+            } catch (IOException ex) {
+                throw readFailure(ex);
+            }
+        }
+
+        @Override
+        public int readBytes(byte[] value) throws JMSException {
+            return readBytes(value, value.length);
+        }
+
+        @Override
+        public int readBytes(byte[] value, int length) throws JMSException {
+            try {
+                return in.read(value, 0, length);
+            } catch (IOException ex) {
+                throw readFailure(ex);
+            }
+        }
+
+        private static JMSException readFailure(IOException ex) {
+            JMSException failure = ex instanceof EOFException ? new MessageEOFException("Reached the end of the body")
+                    : new JMSException("Could not read the body: " + ex.getMessage());
+            failure.setLinkedException(ex);
+            failure.initCause(ex);
+            return failure;
+        }
+
+        @Override
+        public void writeBoolean(boolean value) throws JMSException {
+            throw readOnly();
+        }
+
+        @Override
+        public void writeByte(byte value) throws JMSException {
+            throw readOnly();
+        }
+
+        @Override
+        public void writeShort(short value) throws JMSException {
+            throw readOnly();
+        }
+
+        @Override
+        public void writeChar(char value) throws JMSException {
+            throw readOnly();
+        }
+
+        @Override
+        public void writeInt(int value) throws JMSException {
+            throw readOnly();
+        }
+
+        @Override
+        public void writeLong(long value) throws JMSException {
+            throw readOnly();
+        }
+
+        @Override
+        public void writeFloat(float value) throws JMSException {
+            throw readOnly();
+        }
+
+        @Override
+        public void writeDouble(double value) throws JMSException {
+            throw readOnly();
+        }
+
+        @Override
+        public void writeUTF(String value) throws JMSException {
+            throw readOnly();
+        }
+
+        @Override
+        public void writeBytes(byte[] value) throws JMSException {
+            throw readOnly();
+        }
+
+        @Override
+        public void writeBytes(byte[] value, int offset, int length) throws JMSException {
+            throw readOnly();
+        }
+
+        @Override
+        public void writeObject(Object value) throws JMSException {
+            throw readOnly();
+        }
+    }
+
+}
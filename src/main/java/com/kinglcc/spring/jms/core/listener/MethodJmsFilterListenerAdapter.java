@@ -27,10 +27,17 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.core.MethodParameter;
 import org.springframework.jms.listener.adapter.MessagingMessageListenerAdapter;
+import org.springframework.jms.support.SimpleJmsHeaderMapper;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.Headers;
 import org.springframework.messaging.handler.invocation.InvocableHandlerMethod;
+import org.springframework.messaging.support.MessageBuilder;
 
 import com.kinglcc.spring.jms.JmsException;
+import com.kinglcc.spring.jms.filter.FailureAwareFilter;
 import com.kinglcc.spring.jms.filter.JmsFilter;
 import com.kinglcc.spring.jms.filter.MessageFilter;
 
@@ -40,6 +47,10 @@ import com.kinglcc.spring.jms.filter.MessageFilter;
  * A {@link javax.jms.MessageListener} adapter that invokes a configurable
  * {@link InvocableHandlerMethod}.
  * Include some {@link MessageFilter}, that can filter useless message don't been handled.
+ * The {@link FailureAwareFilter} is notified when the handler fails.
+ * Track the broker latency and the in-flight messages, see {@link LatencyTracker}.
+ * The object of a {@link LocalTopicMessage} delivered by reference is passed to the method
+ * without conversion if a parameter accepts it.
  * </pre>
  *
  * @author liaochaochao
@@ -48,9 +59,14 @@ import com.kinglcc.spring.jms.filter.MessageFilter;
 public class MethodJmsFilterListenerAdapter extends MessagingMessageListenerAdapter implements BeanFactoryAware {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MethodJmsFilterListenerAdapter.class);
+    private static final SimpleJmsHeaderMapper HEADER_MAPPER = new SimpleJmsHeaderMapper();
 
     private List<MessageFilter> filters = new ArrayList<MessageFilter>();
+    private List<Class<?>> payloadTypes = new ArrayList<Class<?>>();
     private BeanFactory beanFactory;
+    private LatencyTracker latencyTracker;
+    private String endpointId;
+    private String destination;
 
     public void setHandlerMethod(InvocableHandlerMethod handlerMethod) {
         super.setHandlerMethod(handlerMethod);
@@ -60,6 +76,11 @@ public class MethodJmsFilterListenerAdapter extends MessagingMessageListenerAdap
                 filters.add(resolveMessageFilter(fn));
             }
         }
+        for (MethodParameter parameter : handlerMethod.getMethodParameters()) {
+            if (!parameter.hasParameterAnnotation(Header.class) && !parameter.hasParameterAnnotation(Headers.class)) {
+                payloadTypes.add(parameter.getParameterType());
+            }
+        }
     }
 
     private MessageFilter resolveMessageFilter(String filterName) {
@@ -75,13 +96,66 @@ public class MethodJmsFilterListenerAdapter extends MessagingMessageListenerAdap
 
     @Override
     public void onMessage(javax.jms.Message jmsMessage, Session session) throws JMSException {
+        if (null == latencyTracker) {
+            doOnMessage(jmsMessage, session);
+            return;
+        }
+        latencyTracker.received(endpointId, destination, jmsMessage);
+        try {
+            doOnMessage(jmsMessage, session);
+        } finally {
+            latencyTracker.completed(endpointId, jmsMessage);
+        }
+    }
+
+    private void doOnMessage(javax.jms.Message jmsMessage, Session session) throws JMSException {
         for (MessageFilter filter : filters) {
             if (!filter.doFilter(jmsMessage, session)) {
                 LOGGER.debug("Reject the message {} because it has already resolved!", jmsMessage.getJMSMessageID());
                 return;
             }
         }
-        super.onMessage(jmsMessage, session);
+        try {
+            super.onMessage(jmsMessage, session);
+        } catch (JMSException | RuntimeException ex) {
+            for (MessageFilter filter : filters) {
+                if (filter instanceof FailureAwareFilter) {
+                    ((FailureAwareFilter) filter).onFailure(jmsMessage, session);
+                }
+            }
+            throw ex;
+        }
+    }
+
+    @Override
+    protected Message<?> toMessagingMessage(javax.jms.Message jmsMessage) {
+        Object payload = jmsMessage instanceof LocalTopicMessage ? ((LocalTopicMessage) jmsMessage).getPayload() : null;
+        if (null == payload || !acceptsPayload(payload)) {
+            return super.toMessagingMessage(jmsMessage);
+        }
+        return MessageBuilder.withPayload(payload).copyHeaders(HEADER_MAPPER.toHeaders(jmsMessage)).build();
+    }
+
+    private boolean acceptsPayload(Object payload) {
+        for (Class<?> payloadType : payloadTypes) {
+            if (payloadType.isInstance(payload)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Track the latency of the messages of the endpoint
+     *
+     * @param latencyTracker the latency tracker
+     * @param endpointId the endpoint id
+     * @param destination the destination of the endpoint
+     */
+    public void setLatencyTracker(LatencyTracker latencyTracker, String endpointId, String destination) {
+        this.latencyTracker = latencyTracker;
+        this.endpointId = endpointId;
+        this.destination = destination;
     }
 
     @Override
@@ -17,10 +17,15 @@ package com.kinglcc.spring.jms.core.listener;
 
 import java.lang.reflect.Method;
 
+import javax.jms.Message;
+
+import org.apache.commons.lang.StringUtils;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanFactoryAware;
 import org.springframework.jms.config.MethodJmsListenerEndpoint;
+import org.springframework.jms.listener.MessageListenerContainer;
+import org.springframework.jms.listener.SessionAwareMessageListener;
 import org.springframework.jms.listener.adapter.MessagingMessageListenerAdapter;
 import org.springframework.messaging.handler.annotation.support.MessageHandlerMethodFactory;
 
@@ -35,6 +40,9 @@ public class MethodJmsListenerEndpointAdapter extends MethodJmsListenerEndpoint
 
     private  MethodJmsListenerEndpoint endpoint;
     private BeanFactory beanFactory;
+    private String localOriginSelector;
+    private LocalTopicDispatcher localTopicDispatcher;
+    private LatencyTracker latencyTracker;
 
     public MethodJmsListenerEndpointAdapter(MethodJmsListenerEndpoint endpoint,
             MessageHandlerMethodFactory messageHandlerMethodFactory) {
@@ -69,7 +77,14 @@ public class MethodJmsListenerEndpointAdapter extends MethodJmsListenerEndpoint
 
     @Override
     public String getSelector() {
-        return endpoint.getSelector();
+        String selector = endpoint.getSelector();
+        if (null == localOriginSelector) {
+            return selector;
+        }
+        if (StringUtils.isBlank(selector)) {
+            return localOriginSelector;
+        }
+        return "(" + selector + ") AND (" + localOriginSelector + ")";
     }
 
     @Override
@@ -81,9 +96,51 @@ public class MethodJmsListenerEndpointAdapter extends MethodJmsListenerEndpoint
     protected MessagingMessageListenerAdapter createMessageListenerInstance() {
         MethodJmsFilterListenerAdapter listener =  new MethodJmsFilterListenerAdapter();
         listener.setBeanFactory(beanFactory);
+        if (null != latencyTracker) {
+            listener.setLatencyTracker(latencyTracker, getId(), getDestination());
+        }
         return listener;
     }
 
+    /**
+     * The listener of the container is registered to the {@link LocalTopicDispatcher} if set
+     */
+    @Override
+    protected MessagingMessageListenerAdapter createMessageListener(MessageListenerContainer container) {
+        MessagingMessageListenerAdapter listener = super.createMessageListener(container);
+        if (null != localTopicDispatcher) {
+            localTopicDispatcher.register(getDestination(), listener);
+        }
+        return listener;
+    }
+
+    /**
+     * Create the listener of the method dispatched by {@link JmsTypeDispatchEndpoint}
+     *
+     * @param container the container of the dispatch endpoint
+     * @return the listener
+     */
+    SessionAwareMessageListener<Message> createDispatchedListener(MessageListenerContainer container) {
+        return createMessageListener(container);
+    }
+
+    /**
+     * The selector to ignore the messages delivered locally, see {@link LocalTopicDispatcher}
+     *
+     * @param localOriginSelector the selector of local origin
+     */
+    public void setLocalOriginSelector(String localOriginSelector) {
+        this.localOriginSelector = localOriginSelector;
+    }
+
+    public void setLocalTopicDispatcher(LocalTopicDispatcher localTopicDispatcher) {
+        this.localTopicDispatcher = localTopicDispatcher;
+    }
+
+    public void setLatencyTracker(LatencyTracker latencyTracker) {
+        this.latencyTracker = latencyTracker;
+    }
+
     @Override
     public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
         this.beanFactory = beanFactory;
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.listener;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang.StringUtils;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import com.kinglcc.spring.jms.JmsException;
+
+/**
+ * RateLimiterRegistry
+ * <pre>
+ * The {@link TokenBucket} of each rate limited listener endpoint, see {@link JmsRateLimit}.
+ * The rates can be changed at runtime by JMX.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月22日 下午2:52:06
+ */
+@ManagedResource(description = "The rate limiters of the jms listeners")
+public class RateLimiterRegistry {
+
+    private static final String RATE_PROPERTY = "jms.message.rateLimit.";
+    private static final String BURST_PROPERTY = "jms.message.rateLimitBurst.";
+
+    private final ConcurrentMap<String, TokenBucket> rateLimiters = new ConcurrentHashMap<String, TokenBucket>();
+
+    private BeanFactory beanFactory;
+
+    /**
+     * Resolve the rate limiter of the endpoint by the annotation or the properties
+     *
+     * @param endpointId the id of the jms listener endpoint
+     * @param annotation the rate limit annotation of the listener method, may be null
+     * @return the rate limiter, or null if the rate is not limited
+     */
+    public TokenBucket resolveRateLimiter(String endpointId, JmsRateLimit annotation) {
+        String rate = resolve("${" + RATE_PROPERTY + endpointId + ":}");
+        String burst = resolve("${" + BURST_PROPERTY + endpointId + ":}");
+        if (StringUtils.isBlank(rate) && null != annotation) {
+            rate = resolve(annotation.value());
+        }
+        if (StringUtils.isBlank(burst) && null != annotation) {
+            burst = resolve(annotation.burst());
+        }
+        if (StringUtils.isBlank(rate)) {
+            return null;
+        }
+        try {
+            double permitsPerSecond = Double.parseDouble(rate.trim());
+            double maxBurst = StringUtils.isBlank(burst) ? permitsPerSecond : Double.parseDouble(burst.trim());
+            TokenBucket rateLimiter = new TokenBucket(permitsPerSecond, maxBurst);
+            rateLimiters.put(endpointId, rateLimiter);
+            return rateLimiter;
+        } catch (IllegalArgumentException ex) {
+            throw new JmsException(String.format("Invalid rate limit (%s, %s) of %s", rate, burst, endpointId), ex);
+        }
+    }
+
+    private String resolve(String value) {
+        if (beanFactory instanceof ConfigurableBeanFactory && StringUtils.contains(value, "${")) {
+            return ((ConfigurableBeanFactory) beanFactory).resolveEmbeddedValue(value);
+        }
+        return value;
+    }
+
+    @ManagedOperation(description = "Change the rate limit of the endpoint, the burst is optional")
+    public void setRateLimit(String endpointId, double permitsPerSecond, double burst) {
+        TokenBucket rateLimiter = rateLimiters.get(endpointId);
+        if (null == rateLimiter) {
+            throw new JmsException(String.format("NOT FOUND the rate limiter of (%s)", endpointId));
+        }
+        rateLimiter.setRate(permitsPerSecond, burst > 0 ? burst : permitsPerSecond);
+    }
+
+    @ManagedAttribute(description = "The permits per second of each endpoint")
+    public Map<String, Double> getRateLimits() {
+        Map<String, Double> rates = new TreeMap<String, Double>();
+        for (Map.Entry<String, TokenBucket> entry : rateLimiters.entrySet()) {
+            rates.put(entry.getKey(), entry.getValue().getPermitsPerSecond());
+        }
+        return rates;
+    }
+
+    @ManagedAttribute(description = "The total throttle wait time of each endpoint, in milliseconds")
+    public Map<String, Long> getThrottleWaitTimes() {
+        Map<String, Long> waitTimes = new TreeMap<String, Long>();
+        for (Map.Entry<String, TokenBucket> entry : rateLimiters.entrySet()) {
+            waitTimes.put(entry.getKey(), entry.getValue().getThrottleWaitMillis());
+        }
+        return waitTimes;
+    }
+
+    @ManagedAttribute(description = "The number of throttled messages of each endpoint")
+    public Map<String, Long> getThrottledMessages() {
+        Map<String, Long> throttled = new TreeMap<String, Long>();
+        for (Map.Entry<String, TokenBucket> entry : rateLimiters.entrySet()) {
+            throttled.put(entry.getKey(), entry.getValue().getThrottledPermits());
+        }
+        return throttled;
+    }
+
+    public TokenBucket getRateLimiter(String endpointId) {
+        return rateLimiters.get(endpointId);
+    }
+
+    public void setBeanFactory(BeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.listener;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.util.Assert;
+
+/**
+ * TokenBucket
+ * <pre>
+ * A token bucket rate limiter. The tokens are refilled at the rate of permits per second,
+ * up to the burst, so the idle time allows a burst of messages.
+ * A permit is reserved when acquired, the caller waits until the reserved token is refilled.
+ * The rate and the burst can be changed at runtime.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月22日 下午2:08:43
+ */
+public class TokenBucket {
+
+    private double permitsPerSecond;
+    private double burst;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    private long acquiredPermits;
+    private long throttledPermits;
+    private long throttleWaitNanos;
+
+    public TokenBucket(double permitsPerSecond, double burst) {
+        setRate(permitsPerSecond, burst);
+        this.tokens = this.burst;
+    }
+
+    /**
+     * Acquire a permit, wait until it's available
+     *
+     * @return true if acquired, false if interrupted
+     */
+    public boolean acquire() {
+        long waitNanos = reserve();
+        if (waitNanos <= 0) {
+            return true;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            refund();
+            return false;
+        }
+    }
+
+    private synchronized long reserve() {
+        refill();
+        tokens -= 1;
+        acquiredPermits++;
+        if (tokens >= 0) {
+            return 0;
+        }
+        long waitNanos = (long) (-tokens * TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        throttledPermits++;
+        throttleWaitNanos += waitNanos;
+        return waitNanos;
+    }
+
+    /**
+     * Give back the permit not used, such as no message received
+     */
+    public synchronized void refund() {
+        tokens = Math.min(burst, tokens + 1);
+        acquiredPermits--;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+        lastRefill = now;
+    }
+
+    /**
+     * Change the rate
+     *
+     * @param permitsPerSecond the permits per second
+     * @param burst the max permits of a burst, at least 1
+     */
+    public synchronized void setRate(double permitsPerSecond, double burst) {
+        Assert.isTrue(permitsPerSecond > 0, "'permitsPerSecond' must be positive");
+        refill();
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = Math.max(1, burst);
+        this.tokens = Math.min(this.tokens, this.burst);
+    }
+
+    public synchronized double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    public synchronized double getBurst() {
+        return burst;
+    }
+
+    public synchronized long getAcquiredPermits() {
+        return acquiredPermits;
+    }
+
+    public synchronized long getThrottledPermits() {
+        return throttledPermits;
+    }
+
+    public synchronized long getThrottleWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(throttleWaitNanos);
+    }
+
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.reply;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.ProducerCallback;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import com.kinglcc.spring.jms.JmsException;
+import com.kinglcc.spring.jms.core.delay.TimingWheel;
+
+/**
+ * JmsReplyQueue
+ * <pre>
+ * The request/reply of {@link com.kinglcc.spring.jms.JmsService} over one reply queue of the node,
+ * instead of a temporary queue and consumer for each request.
+ * The request is sent with the JMSReplyTo of the reply queue and a unique JMSCorrelationID,
+ * the listener of the request replies to JMSReplyTo with the JMSCorrelationID, and the reply is
+ * matched to the pending request by the JMSCorrelationID and converted by the converter of the template.
+ * The requests not replied in time are failed by a {@link TimingWheel}, the late replies are dropped.
+ * The request is sent with the time-to-live of the timeout, so a request not consumed in time expires
+ * in the broker, the listener of the request should also reply with a time-to-live, such as
+ * {@code @JmsListener} with the explicit QoS of the reply, or the replies of the late or lost requests
+ * pile up in the reply queue.
+ * The reply queue is a named queue, it's kept by the broker after shutdown, so use a stable name for
+ * each instance, such as the default of the application, the host and the port, so the instance
+ * restarted consumes the same queue, and let the broker remove the inactive queues
+ * (ActiveMQ gcInactiveDestinations for example) if the instances come and go.
+ * The consumers of the reply queue are started and stopped with the context.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月28日 上午10:06:42
+ */
+@ManagedResource(description = "The request/reply of JmsService")
+public class JmsReplyQueue implements MessageListener, SmartLifecycle, InitializingBean, DisposableBean,
+        Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JmsReplyQueue.class);
+
+    private final JmsTemplate jmsTemplate;
+    private final String replyQueueName;
+    private final String correlationPrefix = Long.toString(System.currentTimeMillis(), 36) + "-";
+    private final AtomicLong correlationSequence = new AtomicLong();
+    private final ConcurrentMap<String, PendingReply<?>> pendingReplies =
+            new ConcurrentHashMap<String, PendingReply<?>>();
+
+    private final AtomicLong repliedRequests = new AtomicLong();
+    private final AtomicLong timedOutRequests = new AtomicLong();
+    private final AtomicLong lateReplies = new AtomicLong();
+
+    private DefaultMessageListenerContainer container;
+    private String concurrency = "1";
+    private long tickDuration = 10;
+
+    private TimingWheel<String> timeouts;
+    private volatile boolean running;
+    private Thread ticker;
+
+    public JmsReplyQueue(JmsTemplate jmsTemplate, String replyQueueName) {
+        this.jmsTemplate = jmsTemplate;
+        this.replyQueueName = replyQueueName;
+    }
+
+    /**
+     * Send the request and wait for the reply
+     *
+     * @param destinationName the destination of the request
+     * @param payload the payload
+     * @param responseType the type of the reply
+     * @param timeout the timeout in milliseconds
+     * @return the reply
+     */
+    public <T> T request(String destinationName, Object payload, Class<T> responseType, long timeout) {
+        ListenableFuture<T> future = requestAsync(destinationName, payload, responseType, timeout);
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            throw new JmsException(String.format("NO reply of the request to %s in %dms", destinationName, timeout),
+                    ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new JmsException("Request to " + destinationName + " error", cause);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new JmsException("Interrupted while waiting for the reply of " + destinationName, ex);
+        }
+    }
+
+    /**
+     * Send the request with the time-to-live of the timeout,
+     * the future is completed by the reply or failed by the timeout
+     *
+     * @param destinationName the destination of the request
+     * @param payload the payload
+     * @param responseType the type of the reply
+     * @param timeout the timeout in milliseconds
+     * @return the future of the reply
+     */
+    public <T> ListenableFuture<T> requestAsync(String destinationName, final Object payload,
+            Class<T> responseType, final long timeout) {
+        final String correlationId = correlationPrefix + correlationSequence.incrementAndGet();
+        PendingReply<T> pending = new PendingReply<T>(responseType);
+        pendingReplies.put(correlationId, pending);
+        synchronized (this) {
+            timeouts.add(correlationId, System.currentTimeMillis() + timeout);
+        }
+        try {
+            jmsTemplate.execute(destinationName, new ProducerCallback<Object>() {
+
+                @Override
+                public Object doInJms(Session session, MessageProducer producer) throws JMSException {
+                    Message message = jmsTemplate.getMessageConverter().toMessage(payload, session);
+                    message.setJMSCorrelationID(correlationId);
+                    message.setJMSReplyTo(resolveReplyQueue(session));
+                    if (jmsTemplate.isExplicitQosEnabled()) {
+                        producer.send(message, jmsTemplate.getDeliveryMode(), jmsTemplate.getPriority(), timeout);
+                    } else {
+                        producer.send(message, producer.getDeliveryMode(), producer.getPriority(), timeout);
+                    }
+                    return null;
+                }
+            });
+        } catch (RuntimeException ex) {
+            pendingReplies.remove(correlationId);
+            throw ex;
+        }
+        return pending.future;
+    }
+
+    private Destination resolveReplyQueue(Session session) throws JMSException {
+        return jmsTemplate.getDestinationResolver().resolveDestinationName(session, replyQueueName, false);
+    }
+
+    @Override
+    public void onMessage(Message message) {
+        String correlationId;
+        try {
+            correlationId = message.getJMSCorrelationID();
+        } catch (JMSException ex) {
+            LOGGER.warn("Drop the reply without JMSCorrelationID", ex);
+            return;
+        }
+        PendingReply<?> pending = null == correlationId ? null : pendingReplies.remove(correlationId);
+        if (null == pending) {
+            lateReplies.incrementAndGet();
+            LOGGER.debug("Drop the late reply {}", correlationId);
+            return;
+        }
+        try {
+            pending.complete(jmsTemplate.getMessageConverter().fromMessage(message));
+            repliedRequests.incrementAndGet();
+        } catch (JMSException | RuntimeException ex) {
+            pending.future.setException(ex);
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            List<String> expired;
+            synchronized (this) {
+                expired = timeouts.advance(System.currentTimeMillis());
+            }
+            for (String correlationId : expired) {
+                PendingReply<?> pending = pendingReplies.remove(correlationId);
+                if (null != pending) {
+                    timedOutRequests.incrementAndGet();
+                    pending.future.setException(new JmsException("NO reply of the request " + correlationId));
+                }
+            }
+            try {
+                Thread.sleep(tickDuration);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+        }
+    }
+
+    public String getReplyQueueName() {
+        return replyQueueName;
+    }
+
+    @ManagedAttribute(description = "The number of requests waiting for the reply")
+    public int getPendingRequests() {
+        return pendingReplies.size();
+    }
+
+    @ManagedAttribute(description = "The number of requests replied")
+    public long getRepliedRequests() {
+        return repliedRequests.get();
+    }
+
+    @ManagedAttribute(description = "The number of requests timed out")
+    public long getTimedOutRequests() {
+        return timedOutRequests.get();
+    }
+
+    @ManagedAttribute(description = "The number of replies dropped after the timeout")
+    public long getLateReplies() {
+        return lateReplies.get();
+    }
+
+    /**
+     * The concurrency of the reply queue consumers, "lower-upper" or "upper"
+     *
+     * @param concurrency the concurrency
+     */
+    public void setConcurrency(String concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * The tick of the timeouts, the requests time out at most one tick late
+     *
+     * @param tickDuration the tick in milliseconds
+     */
+    public void setTickDuration(long tickDuration) {
+        this.tickDuration = tickDuration;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        if (!container.isActive()) {
+            container.afterPropertiesSet();
+        }
+        container.start();
+        running = true;
+        ticker = new Thread(this, "jmsReplyTimeout");
+        ticker.setDaemon(true);
+        ticker.start();
+        LOGGER.info("Listen to the reply queue {}", replyQueueName);
+    }
+
+    @Override
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            running = false;
+            thread = ticker;
+            ticker = null;
+            if (container.isRunning()) {
+                container.stop();
+            }
+        }
+        if (null != thread) {
+            try {
+                thread.join(tickDuration * 10);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void stop(Runnable callback) {
+        stop();
+        callback.run();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return true;
+    }
+
+    /**
+     * Start before the listener containers, so the listeners can send the requests
+     */
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE - 1;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        timeouts = new TimingWheel<String>(tickDuration, System.currentTimeMillis());
+        container = new DefaultMessageListenerContainer();
+        container.setConnectionFactory(jmsTemplate.getConnectionFactory());
+        container.setDestinationResolver(jmsTemplate.getDestinationResolver());
+        container.setDestinationName(replyQueueName);
+        container.setPubSubDomain(false);
+        container.setConcurrency(concurrency);
+        container.setMessageListener(this);
+        container.setBeanName("jmsReplyQueue");
+    }
+
+    @Override
+    public void destroy() {
+        stop();
+        if (container.isActive()) {
+            container.destroy();
+        }
+        for (PendingReply<?> pending : pendingReplies.values()) {
+            pending.future.setException(new JmsException("The reply queue " + replyQueueName + " is closed"));
+        }
+        pendingReplies.clear();
+    }
+
+    private static class PendingReply<T> {
+
+        private final Class<T> responseType;
+        private final SettableListenableFuture<T> future = new SettableListenableFuture<T>();
+
+        PendingReply(Class<T> responseType) {
+            this.responseType = responseType;
+        }
+
+        void complete(Object reply) {
+            if (null != reply && !responseType.isInstance(reply)) {
+                future.setException(new MessageConversionException(String.format(
+                        "The reply of %s can't be converted to %s", reply.getClass().getName(),
+                        responseType.getName())));
+                return;
+            }
+            future.set(responseType.cast(reply));
+        }
+    }
+
+}
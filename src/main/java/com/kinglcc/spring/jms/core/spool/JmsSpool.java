@@ -0,0 +1,430 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.spool;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.SessionCallback;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kinglcc.spring.jms.JmsException;
+import com.kinglcc.spring.jms.core.listener.LatencyTracker;
+import com.kinglcc.spring.jms.core.listener.LocalTopicDispatcher;
+import com.kinglcc.spring.jms.core.listener.LocalTopicMessage;
+
+/**
+ * JmsSpool
+ * <pre>
+ * Local store-and-forward spool for sending messages.
+ * The messages are appended to a {@link MappedJournal} at disk speed, and a background
+ * forwarder sends them to the broker in batches, one batch in one session.
+ * The forwarder is single-threaded, so the order of each destination is kept.
+ * A failed batch is sent again from the checkpoint after the retry interval.
+ * The send timestamp is the time spooled, so the latency includes the time in the spool.
+ * A message that can't be read or converted is moved to the dead letter journal in the
+ * dead-letter sub directory, so it never blocks the messages behind it. The dead letters
+ * are kept until they are requeued or purged by the JMX operations.
+ * The messages of the local origin of this node are delivered by the {@link LocalTopicDispatcher}
+ * after the batch is committed.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月17日 下午3:40:55
+ */
+@ManagedResource(description = "The local store-and-forward spool of JmsService")
+public class JmsSpool implements InitializingBean, DisposableBean, BeanClassLoaderAware, Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JmsSpool.class);
+
+    private static final String DEAD_LETTER_DIRECTORY = "dead-letter";
+
+    private final JmsTemplate jmsTemplate;
+    private final Object signal = new Object();
+    private final AtomicLong forwardedMessages = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong deadLetterCount = new AtomicLong();
+
+    private MappedJournal journal;
+    private MappedJournal deadLetterJournal;
+    private File directory;
+    private int segmentSize = 64 * 1024 * 1024;
+    private int batchSize = 100;
+    private long retryInterval = 1000;
+    private ClassLoader beanClassLoader;
+    private ObjectMapper objectMapper = SpoolRecord.createObjectMapper();
+    private boolean sendTimestamp;
+    private LocalTopicDispatcher localTopicDispatcher;
+
+    private volatile boolean running;
+    private volatile long oldestPendingTimestamp;
+    private Thread forwarder;
+
+    public JmsSpool(JmsTemplate jmsTemplate) {
+        this.jmsTemplate = jmsTemplate;
+    }
+
+    /**
+     * Append the message to the spool, it will be sent by the forwarder
+     *
+     * @param destinationName the destination name
+     * @param messageGroup the message group, may be null
+     * @param localOrigin the local origin node, may be null
+     * @param payload the payload
+     */
+    public void send(String destinationName, String messageGroup, String localOrigin, Object payload) {
+        SpoolRecord record = new SpoolRecord(System.currentTimeMillis(), destinationName, messageGroup,
+                localOrigin, payload);
+        try {
+            journal.append(record.toBytes(objectMapper));
+        } catch (IOException ex) {
+            throw new JmsException("Spool message to " + destinationName + " error", ex);
+        }
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                List<byte[]> data = journal.read(batchSize);
+                if (data.isEmpty()) {
+                    oldestPendingTimestamp = 0;
+                    awaitRecords(retryInterval);
+                    continue;
+                }
+                List<byte[]> deadLetters = new ArrayList<byte[]>();
+                Map<SpoolRecord, byte[]> records = readRecords(data, deadLetters);
+                if (!records.isEmpty()) {
+                    oldestPendingTimestamp = records.keySet().iterator().next().getTimestamp();
+                    forward(records, deadLetters);
+                }
+                moveToDeadLetters(deadLetters);
+                journal.commit();
+                forwardedMessages.addAndGet(data.size() - deadLetters.size());
+            } catch (Exception ex) {
+                failedBatches.incrementAndGet();
+                LOGGER.warn("Forward spooled messages error, retry after {}ms", retryInterval, ex);
+                rewind();
+                awaitRecords(retryInterval);
+            }
+        }
+    }
+
+    private Map<SpoolRecord, byte[]> readRecords(List<byte[]> data, List<byte[]> deadLetters) {
+        Map<SpoolRecord, byte[]> records = new LinkedHashMap<SpoolRecord, byte[]>();
+        for (byte[] bytes : data) {
+            try {
+                records.put(SpoolRecord.fromBytes(bytes, objectMapper, beanClassLoader), bytes);
+            } catch (IOException | RuntimeException ex) {
+                LOGGER.error("Could not read the spooled message, move it to the dead letters", ex);
+                deadLetters.add(bytes);
+            }
+        }
+        return records;
+    }
+
+    private void moveToDeadLetters(List<byte[]> deadLetters) {
+        for (byte[] bytes : deadLetters) {
+            try {
+                deadLetterJournal.append(bytes);
+            } catch (IOException ex) {
+                LOGGER.error("Could not append the dead letter of {} bytes, it's dropped", bytes.length, ex);
+            }
+        }
+        deadLetterCount.addAndGet(deadLetters.size());
+    }
+
+    private void rewind() {
+        try {
+            journal.rewind();
+        } catch (IOException ex) {
+            LOGGER.error("Rewind spool journal error", ex);
+        }
+    }
+
+    private void awaitRecords(long timeout) {
+        synchronized (signal) {
+            try {
+                signal.wait(timeout);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+        }
+    }
+
+    private void forward(final Map<SpoolRecord, byte[]> records, final List<byte[]> deadLetters) {
+        jmsTemplate.execute(new SessionCallback<Object>() {
+
+            @Override
+            public Object doInJms(Session session) throws JMSException {
+                Map<String, MessageProducer> producers = new HashMap<String, MessageProducer>();
+                Map<LocalTopicMessage, String> localMessages = new LinkedHashMap<LocalTopicMessage, String>();
+                try {
+                    for (Map.Entry<SpoolRecord, byte[]> entry : records.entrySet()) {
+                        SpoolRecord record = entry.getKey();
+                        Message message;
+                        try {
+                            message = jmsTemplate.getMessageConverter().toMessage(record.getPayload(), session);
+                        } catch (RuntimeException ex) {
+                            LOGGER.error("Could not convert the spooled message to {}, move it to the dead letters",
+                                    record.getDestinationName(), ex);
+                            deadLetters.add(entry.getValue());
+                            continue;
+                        }
+                        MessageProducer producer = producers.get(record.getDestinationName());
+                        if (null == producer) {
+                            Destination destination = jmsTemplate.getDestinationResolver().resolveDestinationName(
+                                    session, record.getDestinationName(), jmsTemplate.isPubSubDomain());
+                            producer = session.createProducer(destination);
+                            producers.put(record.getDestinationName(), producer);
+                        }
+                        send(producer, record, message);
+                        if (isLocalOrigin(record)) {
+                            String destinationName = record.getDestinationName();
+                            localMessages.put(localTopicDispatcher.copyOf(message, null), destinationName);
+                        }
+                    }
+                    JmsUtils.commitIfNecessary(session);
+                } finally {
+                    for (MessageProducer producer : producers.values()) {
+                        JmsUtils.closeMessageProducer(producer);
+                    }
+                }
+                for (Map.Entry<LocalTopicMessage, String> entry : localMessages.entrySet()) {
+                    localTopicDispatcher.deliver(entry.getValue(), entry.getKey());
+                }
+                return null;
+            }
+        }, false);
+    }
+
+    /**
+     * The record spooled by this node for the local listeners, the local origin of the records
+     * spooled before restart doesn't match, their broker copies are received by the local listeners
+     */
+    private boolean isLocalOrigin(SpoolRecord record) {
+        return null != localTopicDispatcher && localTopicDispatcher.getNodeId().equals(record.getLocalOrigin());
+    }
+
+    private void send(MessageProducer producer, SpoolRecord record, Message message) throws JMSException {
+        if (null != record.getMessageGroup()) {
+            message.setJMSType(record.getMessageGroup());
+        }
+        if (null != record.getLocalOrigin()) {
+            message.setStringProperty(LocalTopicDispatcher.LOCAL_ORIGIN_PROP, record.getLocalOrigin());
+        }
+        if (sendTimestamp) {
+            message.setLongProperty(LatencyTracker.SEND_TIMESTAMP_PROP,
+                    TimeUnit.MILLISECONDS.toMicros(record.getTimestamp()));
+        }
+        if (jmsTemplate.isExplicitQosEnabled()) {
+            producer.send(message, jmsTemplate.getDeliveryMode(), jmsTemplate.getPriority(),
+                    jmsTemplate.getTimeToLive());
+        } else {
+            producer.send(message);
+        }
+    }
+
+    @ManagedAttribute(description = "The number of messages waiting to be forwarded")
+    public long getPendingMessages() {
+        return journal.getPendingRecords();
+    }
+
+    @ManagedAttribute(description = "The number of journal segments in use")
+    public long getSegmentCount() {
+        return journal.getSegmentCount();
+    }
+
+    @ManagedAttribute(description = "The age of the oldest message waiting to be forwarded, in milliseconds")
+    public long getForwardingLag() {
+        long timestamp = oldestPendingTimestamp;
+        return timestamp == 0 ? 0 : System.currentTimeMillis() - timestamp;
+    }
+
+    @ManagedAttribute(description = "The number of messages forwarded to the broker")
+    public long getForwardedMessages() {
+        return forwardedMessages.get();
+    }
+
+    @ManagedAttribute(description = "The number of messages moved to the dead letters, for they can't be read "
+            + "or converted")
+    public long getDeadLetters() {
+        return deadLetterCount.get();
+    }
+
+    @ManagedAttribute(description = "The number of batches failed to forward")
+    public long getFailedBatches() {
+        return failedBatches.get();
+    }
+
+    @ManagedAttribute(description = "The number of dead letters kept in the dead letter journal")
+    public long getPendingDeadLetters() {
+        return deadLetterJournal.getPendingRecords();
+    }
+
+    /**
+     * Move the dead letters back to the spool, for example after the missing payload class is deployed,
+     * the letters still unreadable go back to the dead letters
+     *
+     * @return the number of requeued dead letters
+     * @throws IOException in case of I/O errors
+     */
+    @ManagedOperation(description = "Move the dead letters back to the spool to forward them again")
+    public synchronized long requeueDeadLetters() throws IOException {
+        long count = drainDeadLetters(true);
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+        LOGGER.info("Requeued {} dead letters to the spool", count);
+        return count;
+    }
+
+    /**
+     * Drop all the dead letters
+     *
+     * @return the number of dropped dead letters
+     * @throws IOException in case of I/O errors
+     */
+    @ManagedOperation(description = "Drop all the dead letters")
+    public synchronized long purgeDeadLetters() throws IOException {
+        long count = drainDeadLetters(false);
+        LOGGER.warn("Purged {} dead letters of the spool", count);
+        return count;
+    }
+
+    private long drainDeadLetters(boolean requeue) throws IOException {
+        long count = 0;
+        List<byte[]> data;
+        while (!(data = deadLetterJournal.read(batchSize)).isEmpty()) {
+            try {
+                if (requeue) {
+                    for (byte[] bytes : data) {
+                        journal.append(bytes);
+                    }
+                }
+            } catch (IOException ex) {
+                deadLetterJournal.rewind();
+                throw ex;
+            }
+            deadLetterJournal.commit();
+            count += data.size();
+        }
+        return count;
+    }
+
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setRetryInterval(long retryInterval) {
+        this.retryInterval = retryInterval;
+    }
+
+    /**
+     * Stamp the {@link LatencyTracker#SEND_TIMESTAMP_PROP} with the time spooled
+     *
+     * @param sendTimestamp stamp or not
+     */
+    public void setSendTimestamp(boolean sendTimestamp) {
+        this.sendTimestamp = sendTimestamp;
+    }
+
+    public void setLocalTopicDispatcher(LocalTopicDispatcher localTopicDispatcher) {
+        this.localTopicDispatcher = localTopicDispatcher;
+    }
+
+    /**
+     * The mapper of the spooled payloads, see {@link SpoolRecord}
+     *
+     * @param objectMapper the mapper
+     */
+    public void setObjectMapper(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    @Override
+    public void setBeanClassLoader(ClassLoader classLoader) {
+        this.beanClassLoader = classLoader;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        if (null == directory) {
+            directory = new File(System.getProperty("java.io.tmpdir"), "jms-spool");
+        }
+        journal = new MappedJournal(directory, segmentSize);
+        journal.open();
+        deadLetterJournal = new MappedJournal(new File(directory, DEAD_LETTER_DIRECTORY), segmentSize);
+        deadLetterJournal.open();
+        running = true;
+        forwarder = new Thread(this, "jmsSpoolForwarder");
+        forwarder.setDaemon(true);
+        forwarder.start();
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+        if (null != forwarder) {
+            forwarder.join(retryInterval * 2);
+        }
+        journal.close();
+        deadLetterJournal.close();
+    }
+
+}
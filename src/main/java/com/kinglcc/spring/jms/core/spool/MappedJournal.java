@@ -0,0 +1,359 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.spool;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * MappedJournal
+ * <pre>
+ * An append-only journal of memory-mapped segment files.
+ * Each record is stored as [length][bytes], the length is written after the bytes,
+ * so a zero length means the end of the journal. A negative length means the rest
+ * of the segment is unused, and the next record is at the head of the next segment.
+ * The records are read from the checkpoint, and the checkpoint is moved forward by
+ * {@link #commit()}, the fully committed segments are deleted.
+ * A segment is unmapped as soon as it's left, and all the mappings are released by
+ * {@link #close()}, the closed journal can't be used any more.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月17日 下午2:14:31
+ */
+public class MappedJournal implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedJournal.class);
+
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int LENGTH_SIZE = 4;
+    private static final int ROLL = -1;
+    private static final Unmapper UNMAPPER = Unmapper.create();
+
+    private final File directory;
+    private final int segmentSize;
+
+    private long writeSegment;
+    private MappedByteBuffer writeBuffer;
+
+    private long readSegment;
+    private MappedByteBuffer readBuffer;
+
+    private long checkpointSegment;
+    private int checkpointPosition;
+    private MappedByteBuffer checkpointBuffer;
+
+    private long pendingRecords;
+    private long uncommittedRecords;
+
+    public MappedJournal(File directory, int segmentSize) {
+        Assert.isTrue(segmentSize > LENGTH_SIZE * 2, "'segmentSize' is too small");
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Open the journal, recover the checkpoint and the end of the journal
+     *
+     * @throws IOException in case of I/O errors
+     */
+    public synchronized void open() throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create the journal directory " + directory);
+        }
+        checkpointBuffer = map(new File(directory, CHECKPOINT_FILE), LENGTH_SIZE * 3);
+        checkpointSegment = checkpointBuffer.getLong(0);
+        checkpointPosition = checkpointBuffer.getInt(8);
+
+        long[] segments = listSegments();
+        if (segments.length == 0 || checkpointSegment < segments[0]) {
+            checkpointSegment = segments.length == 0 ? 0 : segments[0];
+            checkpointPosition = 0;
+        }
+        readSegment = checkpointSegment;
+        readBuffer = mapSegment(readSegment);
+        readBuffer.position(checkpointPosition);
+
+        long segment = readSegment;
+        ByteBuffer scan = readBuffer.duplicate();
+        MappedByteBuffer scanMapping = null;
+        pendingRecords = 0;
+        while (true) {
+            int length = scan.remaining() < LENGTH_SIZE ? ROLL : scan.getInt(scan.position());
+            if (length == 0) {
+                break;
+            }
+            if (length < 0) {
+                segment++;
+                unmap(scanMapping);
+                scanMapping = mapSegment(segment);
+                scan = scanMapping;
+                continue;
+            }
+            scan.position(scan.position() + LENGTH_SIZE + length);
+            pendingRecords++;
+        }
+        writeSegment = segment;
+        writeBuffer = mapSegment(writeSegment);
+        writeBuffer.position(scan.position());
+        unmap(scanMapping);
+        uncommittedRecords = 0;
+    }
+
+    /**
+     * Append a record to the end of the journal
+     *
+     * @param data the record
+     * @throws IOException in case of I/O errors
+     */
+    public synchronized void append(byte[] data) throws IOException {
+        checkOpen();
+        int recordSize = LENGTH_SIZE + data.length;
+        if (recordSize + LENGTH_SIZE > segmentSize) {
+            throw new IOException("The record of " + data.length + " bytes is larger than the segment");
+        }
+        if (writeBuffer.remaining() < recordSize + LENGTH_SIZE) {
+            MappedByteBuffer next = mapSegment(writeSegment + 1);
+            if (writeBuffer.remaining() >= LENGTH_SIZE) {
+                writeBuffer.putInt(writeBuffer.position(), ROLL);
+            }
+            writeSegment++;
+            unmap(writeBuffer);
+            writeBuffer = next;
+        }
+        int position = writeBuffer.position();
+        writeBuffer.position(position + LENGTH_SIZE);
+        writeBuffer.put(data);
+        writeBuffer.putInt(position, data.length);
+        pendingRecords++;
+    }
+
+    /**
+     * Read the records after the last read record, they should be committed or rewound later
+     *
+     * @param maxRecords the max number of records
+     * @return the records, empty if no more record
+     * @throws IOException in case of I/O errors
+     */
+    public synchronized List<byte[]> read(int maxRecords) throws IOException {
+        checkOpen();
+        List<byte[]> records = new ArrayList<byte[]>();
+        while (records.size() < maxRecords) {
+            int length = readBuffer.remaining() < LENGTH_SIZE ? ROLL : readBuffer.getInt(readBuffer.position());
+            if (length == 0) {
+                break;
+            }
+            if (length < 0) {
+                if (readSegment >= writeSegment) {
+                    break;
+                }
+                readSegment++;
+                unmap(readBuffer);
+                readBuffer = mapSegment(readSegment);
+                continue;
+            }
+            byte[] data = new byte[length];
+            readBuffer.position(readBuffer.position() + LENGTH_SIZE);
+            readBuffer.get(data);
+            records.add(data);
+        }
+        uncommittedRecords += records.size();
+        return records;
+    }
+
+    /**
+     * Move the checkpoint to the last read record
+     *
+     * @throws IOException if the journal is closed
+     */
+    public synchronized void commit() throws IOException {
+        checkOpen();
+        long previousSegment = checkpointSegment;
+        checkpointSegment = readSegment;
+        checkpointPosition = readBuffer.position();
+        checkpointBuffer.putLong(0, checkpointSegment);
+        checkpointBuffer.putInt(8, checkpointPosition);
+        pendingRecords -= uncommittedRecords;
+        uncommittedRecords = 0;
+        for (long segment = previousSegment; segment < checkpointSegment; segment++) {
+            File file = segmentFile(segment);
+            if (file.exists() && !file.delete()) {
+                LOGGER.warn("Could not delete the journal segment {}", file);
+            }
+        }
+    }
+
+    /**
+     * Read again from the checkpoint
+     *
+     * @throws IOException in case of I/O errors
+     */
+    public synchronized void rewind() throws IOException {
+        checkOpen();
+        if (readSegment != checkpointSegment) {
+            readSegment = checkpointSegment;
+            unmap(readBuffer);
+            readBuffer = mapSegment(readSegment);
+        }
+        readBuffer.position(checkpointPosition);
+        uncommittedRecords = 0;
+    }
+
+    public synchronized long getPendingRecords() {
+        return pendingRecords;
+    }
+
+    public synchronized long getSegmentCount() {
+        return writeSegment - checkpointSegment + 1;
+    }
+
+    /**
+     * Flush and unmap all the segments, the journal can't be used after closed
+     */
+    @Override
+    public synchronized void close() {
+        if (null != writeBuffer) {
+            writeBuffer.force();
+        }
+        if (null != checkpointBuffer) {
+            checkpointBuffer.force();
+        }
+        unmap(readBuffer);
+        unmap(writeBuffer);
+        unmap(checkpointBuffer);
+        readBuffer = null;
+        writeBuffer = null;
+        checkpointBuffer = null;
+    }
+
+    private void checkOpen() throws IOException {
+        if (null == writeBuffer) {
+            throw new IOException("The journal " + directory + " is not open");
+        }
+    }
+
+    /**
+     * Release the mapping now instead of waiting for the GC, the buffer must not be used any more
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        if (null != buffer) {
+            UNMAPPER.unmap(buffer);
+        }
+    }
+
+    private long[] listSegments() {
+        String[] names = directory.list(new FilenameFilter() {
+
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        long[] segments = new long[null == names ? 0 : names.length];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = Long.parseLong(names[i].substring(0, names[i].length() - SEGMENT_SUFFIX.length()));
+        }
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    private File segmentFile(long segment) {
+        return new File(directory, String.format("%020d%s", segment, SEGMENT_SUFFIX));
+    }
+
+    private MappedByteBuffer mapSegment(long segment) throws IOException {
+        return map(segmentFile(segment), segmentSize);
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            if (raf.length() < size) {
+                raf.setLength(size);
+            }
+            FileChannel channel = raf.getChannel();
+            return channel.map(MapMode.READ_WRITE, 0, size);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Unmapper
+     * <pre>
+     * Release the mapped buffer by Unsafe.invokeCleaner on Java 9 and later,
+     * or by the cleaner of the direct buffer on Java 8 and earlier.
+     * If neither is accessible, the mapping is released by the GC.
+     * </pre>
+     */
+    private static final class Unmapper {
+
+        private final Object unsafe;
+        private final Method invokeCleaner;
+
+        private Unmapper(Object unsafe, Method invokeCleaner) {
+            this.unsafe = unsafe;
+            this.invokeCleaner = invokeCleaner;
+        }
+
+        static Unmapper create() {
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                return new Unmapper(theUnsafe.get(null), invokeCleaner);
+            } catch (Exception ex) {
+                return new Unmapper(null, null);
+            }
+        }
+
+        void unmap(MappedByteBuffer buffer) {
+            try {
+                if (null != invokeCleaner) {
+                    invokeCleaner.invoke(unsafe, buffer);
+                    return;
+                }
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (null != cleaner) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            } catch (Exception ex) {
+                LOGGER.debug("Could not unmap the journal segment, it's released by the GC", ex);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.spool;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+
+import org.springframework.util.ClassUtils;
+import org.springframework.util.SerializationUtils;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * SpoolRecord
+ * <pre>
+ * The message spooled in the {@link MappedJournal}.
+ * The {@link Serializable} payload is stored by java serialization, others by the Jackson2
+ * mapper of the owner of the journal, see {@link #createObjectMapper()}.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月17日 下午3:02:18
+ */
+public class SpoolRecord {
+
+    private static final byte SERIALIZED = 'S';
+    private static final byte JSON = 'J';
+
+    private final long timestamp;
+    private final String destinationName;
+    private final String messageGroup;
+    private final String localOrigin;
+    private final Object payload;
+
+    public SpoolRecord(long timestamp, String destinationName, String messageGroup, String localOrigin,
+            Object payload) {
+        this.timestamp = timestamp;
+        this.destinationName = destinationName;
+        this.messageGroup = messageGroup;
+        this.localOrigin = localOrigin;
+        this.payload = payload;
+    }
+
+    /**
+     * Create the default mapper of the JSON payloads, which ignores the unknown properties
+     *
+     * @return the new mapper
+     */
+    public static ObjectMapper createObjectMapper() {
+        return new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    public byte[] toBytes(ObjectMapper objectMapper) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeLong(timestamp);
+        out.writeUTF(destinationName);
+        writeNullableUTF(out, messageGroup);
+        writeNullableUTF(out, localOrigin);
+        byte[] body;
+        if (payload instanceof Serializable) {
+            out.writeByte(SERIALIZED);
+            body = SerializationUtils.serialize(payload);
+        } else {
+            out.writeByte(JSON);
+            out.writeUTF(payload.getClass().getName());
+            body = objectMapper.writeValueAsBytes(payload);
+        }
+        out.writeInt(body.length);
+        out.write(body);
+        out.flush();
+        return bos.toByteArray();
+    }
+
+    public static SpoolRecord fromBytes(byte[] data, ObjectMapper objectMapper, ClassLoader classLoader)
+            throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        long timestamp = in.readLong();
+        String destinationName = in.readUTF();
+        String messageGroup = readNullableUTF(in);
+        String localOrigin = readNullableUTF(in);
+        byte format = in.readByte();
+        String className = format == JSON ? in.readUTF() : null;
+        byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+        Object payload;
+        if (format == JSON) {
+            try {
+                payload = objectMapper.readValue(body, ClassUtils.forName(className, classLoader));
+            } catch (ClassNotFoundException ex) {
+                throw new IOException("Failed to resolve the payload type " + className, ex);
+            }
+        } else {
+            payload = SerializationUtils.deserialize(body);
+        }
+        return new SpoolRecord(timestamp, destinationName, messageGroup, localOrigin, payload);
+    }
+
+    private static void writeNullableUTF(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(null != value);
+        if (null != value) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableUTF(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getDestinationName() {
+        return destinationName;
+    }
+
+    public String getMessageGroup() {
+        return messageGroup;
+    }
+
+    public String getLocalOrigin() {
+        return localOrigin;
+    }
+
+    public Object getPayload() {
+        return payload;
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.filter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * DedupeSizing
+ * <pre>
+ * The sizing calculator of the redis memory of the {@link RedisDedupeStore} layouts.
+ * The estimates follow the redis encodings: a top-level key with expiration costs about
+ * 90 bytes besides the key, an entry of a small hash (ziplist) costs the field and
+ * about 6 bytes, and a bloom filter costs -ln(p) / ln(2)^2 bits per entry.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月25日 下午4:05:41
+ */
+public final class DedupeSizing {
+
+    private static final int KEY_OVERHEAD = 90;
+    private static final int HASH_ENTRY_OVERHEAD = 6;
+    private static final int HASH_KEY_OVERHEAD = 80;
+    private static final long MAX_BITMAP_BITS = 1L << 32;
+    private static final double LN2 = Math.log(2);
+
+    private DedupeSizing() {
+    }
+
+    /**
+     * The bits of the bloom filter, at most the 512MB of a redis bitmap
+     *
+     * @param expected the expected entries
+     * @param falsePositiveRate the false positive rate
+     * @return the bits
+     */
+    public static long bloomBits(long expected, double falsePositiveRate) {
+        long bits = (long) Math.ceil(-expected * Math.log(falsePositiveRate) / (LN2 * LN2));
+        return Math.min(MAX_BITMAP_BITS, Math.max(64, bits));
+    }
+
+    /**
+     * The hash functions of the bloom filter
+     *
+     * @param bits the bits
+     * @param expected the expected entries
+     * @return the number of hash functions
+     */
+    public static int bloomHashes(long bits, long expected) {
+        return Math.max(1, (int) Math.round((double) bits / Math.max(1, expected) * LN2));
+    }
+
+    public static long keyLayoutBytes(long entries, int keyLength) {
+        return entries * (keyLength + KEY_OVERHEAD);
+    }
+
+    public static long bucketLayoutBytes(long entries, int fieldLength, long hashKeys) {
+        return entries * (fieldLength + HASH_ENTRY_OVERHEAD) + hashKeys * HASH_KEY_OVERHEAD;
+    }
+
+    /**
+     * Estimate the redis memory of each layout
+     *
+     * @param rate the messages per second
+     * @param windowSeconds the dedupe window in seconds
+     * @param buckets the buckets of the window
+     * @param keyLength the average length of the message keys
+     * @param falsePositiveRate the false positive rate of the bloom layout
+     * @return the bytes of each layout
+     */
+    public static Map<String, Long> estimate(long rate, long windowSeconds, int buckets, int keyLength,
+            double falsePositiveRate) {
+        long entries = rate * windowSeconds;
+        long bucketEntries = (long) Math.ceil((double) entries / buckets);
+        long liveBuckets = buckets + 1;
+        long shards = shards(bucketEntries);
+        Map<String, Long> estimates = new LinkedHashMap<String, Long>();
+        estimates.put(RedisDedupeStore.Layout.KEY.name(), keyLayoutBytes(entries, keyLength));
+        estimates.put(RedisDedupeStore.Layout.BUCKET.name(), bucketLayoutBytes(bucketEntries * liveBuckets,
+                RedisDedupeStore.FIELD_LENGTH, shards * liveBuckets));
+        estimates.put(RedisDedupeStore.Layout.BLOOM.name(),
+                bloomBits(bucketEntries, falsePositiveRate) / 8 * liveBuckets);
+        return estimates;
+    }
+
+    /**
+     * The hashes of a bucket, so each hash keeps the compact encoding
+     *
+     * @param bucketEntries the entries of a bucket
+     * @return the number of hashes
+     */
+    public static long shards(long bucketEntries) {
+        return Math.max(1, (bucketEntries + RedisDedupeStore.ENTRIES_PER_HASH - 1) / RedisDedupeStore.ENTRIES_PER_HASH);
+    }
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.filter;
+
+/**
+ * DedupeStore
+ * <pre>The store of the handled message keys, shared by the nodes to reject the duplicates</pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月25日 下午2:10:33
+ */
+public interface DedupeStore {
+
+    /**
+     * Mark the key as handled, only if it's not marked yet
+     *
+     * @param key the key
+     * @return true if marked, false if it's a duplicate
+     */
+    boolean putIfAbsent(String key);
+
+    /**
+     * Remove the mark of the key, so the key is accepted again
+     *
+     * @param key the key
+     * @return true if removed, false if the store can't remove the key
+     */
+    boolean remove(String key);
+
+}
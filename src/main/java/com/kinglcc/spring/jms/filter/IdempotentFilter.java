@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.filter;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.kinglcc.spring.jms.core.claimcheck.ClaimCheck;
+import com.kinglcc.spring.jms.core.listener.DelayedRetryHandler;
+
+/**
+ * IdempotentFilter
+ * <pre>
+ * The filter rejects the duplicates by the business key, instead of the JMSMessageID
+ * which is changed by the retries of the producer.
+ * The key is the message property of the key header, or the field of the key path
+ * in the JSON body, such as order.id. The field is found by a streaming parser,
+ * which stops at the field without deserializing the whole body.
+ * The redelivered messages and the retried copies of {@link DelayedRetryHandler} are accepted,
+ * they are rolled back or retried but not handled.
+ * The key is removed when the handler fails, so the message is accepted again when it's sent again,
+ * except by the BLOOM layout of {@link RedisDedupeStore}.
+ * The keys are marked in the {@link DedupeStore}, prefixed by the key prefix and the destination,
+ * declare another filter with a different key prefix for each listener of the same destination.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月25日 下午2:40:17
+ */
+@ConditionalOnClass(RedisTemplate.class)
+@Component("idempotentFilter")
+public class IdempotentFilter implements FailureAwareFilter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IdempotentFilter.class);
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    @Autowired
+    private DedupeStore dedupeStore;
+    @Autowired(required = false)
+    private ClaimCheck claimCheck;
+
+    @Value("${jms.message.idempotentKeyHeader:}")
+    private String keyHeader;
+    @Value("${jms.message.idempotentKeyPath:}")
+    private String keyPath;
+    @Value("${jms.message.idempotentKeyPrefix:idempotent:}")
+    private String keyPrefix;
+
+    @Override
+    public boolean doFilter(Message jmsMessage, Session session) {
+        try {
+            if (jmsMessage.getJMSRedelivered()
+                    || jmsMessage.propertyExists(DelayedRetryHandler.RETRY_ATTEMPTS_PROP)) {
+                return true;
+            }
+            String key = extractKey(jmsMessage);
+            if (null == key) {
+                LOGGER.debug("NOT FOUND the idempotent key of the message {}", jmsMessage.getJMSMessageID());
+                return true;
+            }
+            return dedupeStore.putIfAbsent(keyPrefix + jmsMessage.getJMSDestination() + ":" + key);
+        } catch (JMSException | IOException e) {
+            LOGGER.error("Extract the idempotent key error", e);
+        }
+        return true;
+    }
+
+    @Override
+    public void onFailure(Message jmsMessage, Session session) {
+        try {
+            String key = extractKey(jmsMessage);
+            if (null != key) {
+                dedupeStore.remove(keyPrefix + jmsMessage.getJMSDestination() + ":" + key);
+            }
+        } catch (JMSException | IOException | RuntimeException e) {
+            LOGGER.error("Remove the idempotent key of the failed message error", e);
+        }
+    }
+
+    private String extractKey(Message message) throws JMSException, IOException {
+        if (StringUtils.isNotBlank(keyHeader) && message.propertyExists(keyHeader)) {
+            return message.getStringProperty(keyHeader);
+        }
+        if (StringUtils.isBlank(keyPath)) {
+            return null;
+        }
+        String[] path = StringUtils.split(keyPath, '.');
+        if (null != claimCheck && null != claimCheck.getReference(message)) {
+            InputStream body = claimCheck.checkOut(claimCheck.getReference(message));
+            try {
+                return findField(JSON_FACTORY.createParser(body), path);
+            } finally {
+                IOUtils.closeQuietly(body);
+            }
+        }
+        if (message instanceof TextMessage) {
+            String text = ((TextMessage) message).getText();
+            return null == text ? null : findField(JSON_FACTORY.createParser(text), path);
+        }
+        if (message instanceof BytesMessage) {
+            BytesMessage bytesMessage = (BytesMessage) message;
+            byte[] body = new byte[(int) bytesMessage.getBodyLength()];
+            bytesMessage.readBytes(body);
+            bytesMessage.reset();
+            return findField(JSON_FACTORY.createParser(body), path);
+        }
+        return null;
+    }
+
+    /**
+     * Find the scalar field of the path, the other fields are skipped without parsing
+     *
+     * @param parser the parser of the JSON body
+     * @param path the field names of the path
+     * @return the text of the field, null if not found
+     * @throws IOException if the body is not JSON
+     */
+    static String findField(JsonParser parser, String[] path) throws IOException {
+        try {
+            if (JsonToken.START_OBJECT != parser.nextToken()) {
+                return null;
+            }
+            for (int i = 0; i < path.length; i++) {
+                if (!moveToField(parser, path[i])) {
+                    return null;
+                }
+                JsonToken token = parser.nextToken();
+                if (i == path.length - 1) {
+                    return token.isScalarValue() && JsonToken.VALUE_NULL != token ? parser.getText() : null;
+                }
+                if (JsonToken.START_OBJECT != token) {
+                    return null;
+                }
+            }
+            return null;
+        } finally {
+            parser.close();
+        }
+    }
+
+    private static boolean moveToField(JsonParser parser, String fieldName) throws IOException {
+        JsonToken token;
+        while (null != (token = parser.nextToken()) && JsonToken.END_OBJECT != token) {
+            if (fieldName.equals(parser.getCurrentName())) {
+                return true;
+            }
+            parser.nextToken();
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    public void setKeyHeader(String keyHeader) {
+        this.keyHeader = keyHeader;
+    }
+
+    public void setKeyPath(String keyPath) {
+        this.keyPath = keyPath;
+    }
+
+    public void setKeyPrefix(String keyPrefix) {
+        this.keyPrefix = keyPrefix;
+    }
+
+    public void setDedupeStore(DedupeStore dedupeStore) {
+        this.dedupeStore = dedupeStore;
+    }
+
+}
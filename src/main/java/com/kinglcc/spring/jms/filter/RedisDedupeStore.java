@@ -0,0 +1,285 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.filter;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * RedisDedupeStore
+ * <pre>
+ * The {@link DedupeStore} in redis, of the layouts:
+ * KEY: one key for each message with the expiration, exact but about 100 bytes per message;
+ * BUCKET: the 64 bits hash of the key in the small hashes of the time bucket, one expiration per hash,
+ * the hashes of a bucket are sharded to keep the compact encoding, about 20 bytes per message;
+ * BLOOM: the bloom bitmap of the time bucket with the false positive rate, about 2 bytes per message
+ * at 0.1%, a false positive rejects a new message as a duplicate.
+ * The dedupe window is split into the buckets, a key is checked in the buckets of the window
+ * and marked in the current one, atomically by the lua scripts.
+ * The keys of a window share the hash tag of the layout and the shard, such as
+ * jms:dedupe:{bucket:3f}:1680, so a script touches a single slot of Redis Cluster.
+ * A key is removed from all the buckets of the window, except in the BLOOM layout, whose bits
+ * are shared by the keys, so the key stays marked until its bucket is expired.
+ * </pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月25日 下午2:18:05
+ */
+@ConditionalOnClass(RedisTemplate.class)
+@Component("dedupeStore")
+@ManagedResource(description = "The dedupe store in redis")
+public class RedisDedupeStore implements DedupeStore, InitializingBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RedisDedupeStore.class);
+
+    public enum Layout {
+        KEY, BUCKET, BLOOM
+    }
+
+    static final int FIELD_LENGTH = 13;
+    static final int ENTRIES_PER_HASH = 100;
+
+    private static final String VALUE_STORE_IN_REDIS = "1";
+    private static final int DEFAULT_KEY_LENGTH = 40;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final RedisScript<Long> BUCKET_SCRIPT = new DefaultRedisScript<Long>(
+            "for i = 2, #KEYS do "
+            + "if redis.call('HEXISTS', KEYS[i], ARGV[1]) == 1 then return 0 end end "
+            + "if redis.call('HSETNX', KEYS[1], ARGV[1], '1') == 0 then return 0 end "
+            + "if redis.call('TTL', KEYS[1]) < 0 then redis.call('EXPIRE', KEYS[1], ARGV[2]) end "
+            + "return 1", Long.class);
+    private static final RedisScript<Long> BLOOM_SCRIPT = new DefaultRedisScript<Long>(
+            "for i = 1, #KEYS do "
+            + "local found = true "
+            + "for j = 2, #ARGV do "
+            + "if redis.call('GETBIT', KEYS[i], ARGV[j]) == 0 then found = false break end end "
+            + "if found then return 0 end end "
+            + "for j = 2, #ARGV do redis.call('SETBIT', KEYS[1], ARGV[j], 1) end "
+            + "if redis.call('TTL', KEYS[1]) < 0 then redis.call('EXPIRE', KEYS[1], ARGV[1]) end "
+            + "return 1", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${jms.message.dedupeExpiration:30}")
+    private long expiration;
+    @Value("${jms.message.dedupeLayout:KEY}")
+    private Layout layout;
+    @Value("${jms.message.dedupeBuckets:6}")
+    private int buckets;
+    @Value("${jms.message.dedupeRate:1000}")
+    private long rate;
+    @Value("${jms.message.dedupeFalsePositiveRate:0.001}")
+    private double falsePositiveRate;
+    @Value("${jms.message.dedupeKeyPrefix:jms:dedupe:}")
+    private String keyPrefix;
+
+    private long bucketSeconds;
+    private long bucketTtl;
+    private long shards;
+    private long bloomBits;
+    private int bloomHashes;
+
+    private final AtomicLong markedKeys = new AtomicLong();
+    private final AtomicLong duplicateKeys = new AtomicLong();
+    private final AtomicLong markedKeyLength = new AtomicLong();
+
+    @Override
+    public boolean putIfAbsent(String key) {
+        boolean marked;
+        switch (layout) {
+        case BUCKET:
+            marked = putInBucket(key);
+            break;
+        case BLOOM:
+            marked = putInBloom(key);
+            break;
+        default:
+            marked = putKey(key);
+        }
+        if (marked) {
+            markedKeys.incrementAndGet();
+            markedKeyLength.addAndGet(key.length());
+        } else {
+            duplicateKeys.incrementAndGet();
+        }
+        return marked;
+    }
+
+    @Override
+    public boolean remove(String key) {
+        switch (layout) {
+        case BUCKET:
+            long hash = hash(key);
+            String field = Long.toString(hash, 36);
+            for (String bucketKey : windowKeys(bucketTag(hash))) {
+                stringRedisTemplate.opsForHash().delete(bucketKey, field);
+            }
+            return true;
+        case BLOOM:
+            LOGGER.debug("Could not remove the key {} from the bloom bitmap", key);
+            return false;
+        default:
+            stringRedisTemplate.delete(key);
+            return true;
+        }
+    }
+
+    private boolean putKey(String key) {
+        Boolean result = stringRedisTemplate.boundValueOps(key).setIfAbsent(VALUE_STORE_IN_REDIS);
+        if (null != result && result) {
+            stringRedisTemplate.expire(key, expiration, TimeUnit.MINUTES);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean putInBucket(String key) {
+        long hash = hash(key);
+        Long result = stringRedisTemplate.execute(BUCKET_SCRIPT, windowKeys(bucketTag(hash)),
+                Long.toString(hash, 36), String.valueOf(bucketTtl));
+        return null != result && result == 1L;
+    }
+
+    private boolean putInBloom(String key) {
+        long hash = hash(key);
+        long h1 = hash & 0xFFFFFFFFL;
+        long h2 = (hash >>> 32) | 1;
+        Object[] args = new Object[bloomHashes + 1];
+        args[0] = String.valueOf(bucketTtl);
+        for (int i = 0; i < bloomHashes; i++) {
+            args[i + 1] = String.valueOf((h1 + i * h2) % bloomBits);
+        }
+        Long result = stringRedisTemplate.execute(BLOOM_SCRIPT, windowKeys("bloom"), args);
+        return null != result && result == 1L;
+    }
+
+    private String bucketTag(long hash) {
+        return "bucket:" + Long.toString((hash >>> 1) % shards, 36);
+    }
+
+    /**
+     * The keys of the buckets in the window, from the current one, in the hash tag of the redis cluster
+     */
+    private List<String> windowKeys(String tag) {
+        long current = System.currentTimeMillis() / TimeUnit.SECONDS.toMillis(bucketSeconds);
+        List<String> keys = new ArrayList<String>(buckets + 1);
+        String prefix = keyPrefix + "{" + tag + "}:";
+        for (long bucket = current; bucket >= current - buckets; bucket--) {
+            keys.add(prefix + bucket);
+        }
+        return keys;
+    }
+
+    /**
+     * The 64 bits FNV-1a hash of the key, mixed by the murmur3 finalizer
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash & Long.MAX_VALUE;
+    }
+
+    @ManagedAttribute(description = "The layout of the keys")
+    public String getLayout() {
+        return layout.name();
+    }
+
+    @ManagedAttribute(description = "The keys marked")
+    public long getMarkedKeys() {
+        return markedKeys.get();
+    }
+
+    @ManagedAttribute(description = "The duplicate keys rejected")
+    public long getDuplicateKeys() {
+        return duplicateKeys.get();
+    }
+
+    @ManagedAttribute(description = "The estimated bytes of the dedupe window at the expected rate")
+    public long getEstimatedMemory() {
+        return estimateMemory(rate).get(layout.name());
+    }
+
+    @ManagedAttribute(description = "The used memory of the redis server in bytes, -1 if unknown")
+    public long getRedisUsedMemory() {
+        Properties info = stringRedisTemplate.execute(new RedisCallback<Properties>() {
+            @Override
+            public Properties doInRedis(RedisConnection connection) throws DataAccessException {
+                return connection.info("memory");
+            }
+        });
+        String usedMemory = null == info ? null : info.getProperty("used_memory");
+        return null == usedMemory ? -1 : Long.parseLong(usedMemory.trim());
+    }
+
+    @ManagedOperation(description = "Estimate the bytes of each layout for the dedupe window at the rate")
+    public Map<String, Long> estimateMemory(long rate) {
+        long keys = markedKeys.get();
+        int keyLength = keys > 0 ? (int) (markedKeyLength.get() / keys) : DEFAULT_KEY_LENGTH;
+        return DedupeSizing.estimate(rate, TimeUnit.MINUTES.toSeconds(expiration), buckets, keyLength,
+                falsePositiveRate);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (Layout.KEY == layout) {
+            return;
+        }
+        long window = TimeUnit.MINUTES.toSeconds(expiration);
+        buckets = Math.max(1, buckets);
+        bucketSeconds = Math.max(1, (window + buckets - 1) / buckets);
+        bucketTtl = bucketSeconds * (buckets + 1);
+        long bucketEntries = rate * bucketSeconds;
+        shards = DedupeSizing.shards(bucketEntries);
+        bloomBits = DedupeSizing.bloomBits(bucketEntries, falsePositiveRate);
+        bloomHashes = DedupeSizing.bloomHashes(bloomBits, bucketEntries);
+        LOGGER.info("The {} layout of the dedupe store, {} buckets of {}s, about {} bytes at {} messages/s",
+                layout, buckets, bucketSeconds, getEstimatedMemory(), rate);
+    }
+
+}
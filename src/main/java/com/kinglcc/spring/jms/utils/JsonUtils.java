@@ -24,11 +24,12 @@ import org.slf4j.LoggerFactory;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.Module;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
  * JsonUtils
- * <pre>The json tools using Jackson2</pre>
+ * <pre>The json tools using Jackson2, the mappers are shared</pre>
  *
  * @author liaochaochao
  * @since 2016年1月26日 下午8:52:24
@@ -38,6 +39,9 @@ public class JsonUtils {
     private static final Logger LOGGER = LoggerFactory.getLogger(JsonUtils.class);
     private static final String DEFAULT_DATEFORMAT = "yyyy-MM-dd HH:mm:ss";
 
+    private static final ObjectMapper MAPPER = createMapper(false);
+    private static final ObjectMapper IGNORE_UNKNOWN_MAPPER = createMapper(true);
+
     private static ObjectMapper createMapper(boolean ignoreUnkownProps) {
         ObjectMapper mapper = new ObjectMapper();
         if (ignoreUnkownProps) {
@@ -47,6 +51,20 @@ public class JsonUtils {
         return mapper;
     }
 
+    private static ObjectMapper getMapper(boolean ignoreUnkownProps) {
+        return ignoreUnkownProps ? IGNORE_UNKNOWN_MAPPER : MAPPER;
+    }
+
+    /**
+     * Register the module to the shared mappers
+     *
+     * @param module the module
+     */
+    public static void registerModule(Module module) {
+        MAPPER.registerModule(module);
+        IGNORE_UNKNOWN_MAPPER.registerModule(module);
+    }
+
     /**
      * 将json转换成object
      * 
@@ -62,7 +80,7 @@ public class JsonUtils {
 
         try {
             boolean ignore = isIgnoreUnknownProps(ignoreUnkownProps);
-            return createMapper(ignore).<T> readValue(jsonString, clazz);
+            return getMapper(ignore).<T> readValue(jsonString, clazz);
         } catch (Exception e) {
             LOGGER.error("Deserialize {} error", jsonString, e);
             return null;
@@ -84,7 +102,7 @@ public class JsonUtils {
 
         try {
             boolean ignore = isIgnoreUnknownProps(ignoreUnkownProps);
-            return createMapper(ignore).<T> readValue(jsonString, type);
+            return getMapper(ignore).<T> readValue(jsonString, type);
         } catch (Exception e) {
             LOGGER.error("Deserialize {} error", jsonString, e);
             return null;
@@ -101,7 +119,7 @@ public class JsonUtils {
 
     public static String toJson(Object obj) {
         try {
-            return createMapper(false).writeValueAsString(obj);
+            return getMapper(false).writeValueAsString(obj);
         } catch (JsonProcessingException e) {
             LOGGER.error("Serialize {} error", obj, e);
             return null;
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.converter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+import org.springframework.messaging.converter.MessageConversionException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * JsonArrayIteratorTest
+ * <pre>The elements are read one by one, and the parser is closed at the end or on failure.</pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月22日 上午11:05:40
+ */
+public class JsonArrayIteratorTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private JsonArrayIterator<Item> iterate(String json) throws IOException {
+        JsonParser parser = objectMapper.getFactory().createParser(json);
+        return new JsonArrayIterator<Item>(parser, objectMapper, objectMapper.constructType(Item.class));
+    }
+
+    @Test
+    public void iteratesTheElementsInOrder() throws IOException {
+        JsonArrayIterator<Item> iterator = iterate("[{\"id\":1,\"name\":\"a\"},{\"id\":2,\"name\":\"b\"}]");
+
+        assertTrue(iterator.hasNext());
+        assertTrue(iterator.hasNext());
+        assertEquals(1, iterator.next().id);
+        Item second = iterator.next();
+        assertEquals(2, second.id);
+        assertEquals("b", second.name);
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void nextWithoutHasNext() throws IOException {
+        JsonArrayIterator<Item> iterator = iterate("[{\"id\":1},{\"id\":2}]");
+
+        assertEquals(1, iterator.next().id);
+        assertEquals(2, iterator.next().id);
+        try {
+            iterator.next();
+            fail("NoSuchElementException expected");
+        } catch (NoSuchElementException expected) {
+            assertFalse(iterator.hasNext());
+        }
+    }
+
+    @Test
+    public void emptyArrayAndNull() throws IOException {
+        assertFalse(iterate("[]").hasNext());
+        assertFalse(iterate("null").hasNext());
+        assertFalse(iterate("").hasNext());
+    }
+
+    @Test(expected = MessageConversionException.class)
+    public void rejectsNonArray() throws IOException {
+        iterate("{\"id\":1}");
+    }
+
+    @Test
+    public void closesTheParserOnBadElement() throws IOException {
+        JsonParser parser = objectMapper.getFactory().createParser("[{\"id\":1},{\"id\":\"x\"},{\"id\":3}]");
+        JsonArrayIterator<Item> iterator =
+                new JsonArrayIterator<Item>(parser, objectMapper, objectMapper.constructType(Item.class));
+
+        assertEquals(1, iterator.next().id);
+        try {
+            iterator.next();
+            fail("MessageConversionException expected");
+        } catch (MessageConversionException expected) {
+            assertTrue(parser.isClosed());
+            assertFalse(iterator.hasNext());
+        }
+    }
+
+    @Test
+    public void closeStopsTheIteration() throws IOException {
+        JsonArrayIterator<Item> iterator = iterate("[{\"id\":1},{\"id\":2}]");
+
+        assertEquals(1, iterator.next().id);
+        iterator.close();
+        assertFalse(iterator.hasNext());
+    }
+
+    public static class Item {
+
+        public int id;
+        public String name;
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.delay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * TimingWheelTest
+ * <pre>The ticks are of 1ms from 0 unless stated, so a deadline is its tick.</pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月25日 下午6:03:52
+ */
+public class TimingWheelTest {
+
+    @Test
+    public void expiresAtTheDeadline() {
+        TimingWheel<String> wheel = new TimingWheel<String>(1, 0);
+        wheel.add("a", 5);
+
+        assertTrue(wheel.advance(4).isEmpty());
+        assertEquals(1, wheel.size());
+        assertEquals(Collections.singletonList("a"), wheel.advance(5));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void deadlineIsRoundedUpToTheTick() {
+        TimingWheel<String> wheel = new TimingWheel<String>(10, 1000);
+        wheel.add("a", 1015);
+
+        assertTrue(wheel.advance(1019).isEmpty());
+        assertEquals(Collections.singletonList("a"), wheel.advance(1020));
+    }
+
+    @Test
+    public void pastDeadlineExpiresAtTheNextTick() {
+        TimingWheel<String> wheel = new TimingWheel<String>(1, 0);
+        wheel.advance(100);
+        wheel.add("a", 50);
+
+        assertEquals(Collections.singletonList("a"), wheel.advance(101));
+    }
+
+    @Test
+    public void sameTickExpiresInTheOrderAdded() {
+        TimingWheel<String> wheel = new TimingWheel<String>(1, 0);
+        wheel.add("a", 300);
+        wheel.add("b", 300);
+        wheel.advance(100);
+        wheel.add("c", 300);
+
+        assertEquals(Arrays.asList("a", "b", "c"), wheel.advance(300));
+    }
+
+    @Test
+    public void sameTickCascadedFromEachLevelExpiresInTheOrderAdded() {
+        TimingWheel<String> wheel = new TimingWheel<String>(1, 0);
+        wheel.add("a", 65600);
+        wheel.advance(65000);
+        wheel.add("b", 65600);
+        wheel.advance(65500);
+        wheel.add("c", 65600);
+        wheel.advance(65599);
+        wheel.add("d", 65600);
+
+        assertEquals(Arrays.asList("a", "b", "c", "d"), wheel.advance(65600));
+    }
+
+    @Test
+    public void cascadesAtTheBoundariesOfTheLevels() {
+        assertExpiresExactly(0, 1, 255, 256, 257, 511, 512, 65279, 65535, 65536, 65537, 65791, 65792, 131072,
+                16777215, 16777216, 16777217);
+    }
+
+    @Test
+    public void cascadesFromAnOffset() {
+        assertExpiresExactly(100, 355, 356, 511, 520, 600, 65635, 65636, 65791, 65792);
+        assertExpiresExactly(65000, 65280, 65300, 65535, 65536, 65600, 130535, 130536, 131072);
+    }
+
+    @Test
+    public void advanceOverManyTicksKeepsTheOrder() {
+        TimingWheel<Long> wheel = new TimingWheel<Long>(1, 0);
+        List<Long> deadlines = Arrays.asList(70000L, 256L, 65536L, 3L, 1000L);
+        for (Long deadline : deadlines) {
+            wheel.add(deadline, deadline);
+        }
+
+        assertEquals(Arrays.asList(3L, 256L, 1000L, 65536L), wheel.advance(69999));
+        assertEquals(1, wheel.size());
+        assertEquals(Collections.singletonList(70000L), wheel.advance(70000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveTickDuration() {
+        new TimingWheel<String>(0, 0);
+    }
+
+    /**
+     * Add the deadlines after advancing to the start, each one should expire at its tick, not before
+     */
+    private static void assertExpiresExactly(long start, long... deadlines) {
+        TimingWheel<Long> wheel = new TimingWheel<Long>(1, 0);
+        wheel.advance(start);
+        for (long deadline : deadlines) {
+            wheel.add(deadline, deadline);
+        }
+        for (long deadline : deadlines) {
+            assertEquals("before " + deadline, Collections.emptyList(), wheel.advance(deadline - 1));
+            assertEquals("at " + deadline, Collections.singletonList(deadline), wheel.advance(deadline));
+        }
+        assertEquals(0, wheel.size());
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * LatencyHistogramTest
+ * <pre>The bucket of a latency is its bit length, so 1 is in bucket 1, 2-3 in bucket 2, 4-7 in bucket 3.</pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月24日 上午11:05:18
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getPercentile(0.5));
+        assertEquals(0, histogram.getPercentile(0.99));
+    }
+
+    @Test
+    public void percentileIsTheUpperBoundOfTheBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(50, histogram.getMean());
+        assertEquals(100, histogram.getMax());
+        // the 50th latency is in the bucket of 32-63
+        assertEquals(63, histogram.getPercentile(0.5));
+        // the 90th latency is in the bucket of 64-127, capped by the max
+        assertEquals(100, histogram.getPercentile(0.9));
+        assertEquals(1, histogram.getPercentile(0.01));
+    }
+
+    @Test
+    public void errorIsLessThanTwice() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(600);
+        histogram.record(3000);
+
+        long p50 = histogram.getPercentile(0.5);
+        assertEquals(1023, p50);
+        assertTrue(p50 >= 600 && p50 < 1200);
+        assertEquals(3000, histogram.getPercentile(1.0));
+    }
+
+    @Test
+    public void negativeLatencyIsRecordedAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getPercentile(1.0));
+    }
+
+    @Test
+    public void hugeLatencyIsInTheLastBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE / 2);
+
+        assertEquals((1L << 39) - 1, histogram.getPercentile(0.5));
+        assertEquals(Long.MAX_VALUE / 2, histogram.getMax());
+    }
+
+    @Test
+    public void snapshotIsInMilliseconds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1500);
+
+        Map<String, Object> snapshot = histogram.getSnapshot();
+        assertEquals(Arrays.asList("count", "mean", "p50", "p90", "p99", "max"),
+                Arrays.asList(snapshot.keySet().toArray()));
+        assertEquals(1L, snapshot.get("count"));
+        assertEquals(1.5, (Double) snapshot.get("mean"), 0);
+        assertEquals(1.5, (Double) snapshot.get("p99"), 0);
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.core.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * TokenBucketTest
+ * <pre>The slow rates keep the refill during a test negligible, the fast ones keep the waits short.</pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月22日 下午3:12:06
+ */
+public class TokenBucketTest {
+
+    @Test
+    public void burstIsNotThrottled() {
+        TokenBucket bucket = new TokenBucket(1, 3);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(bucket.acquire());
+        }
+        assertEquals(3, bucket.getAcquiredPermits());
+        assertEquals(0, bucket.getThrottledPermits());
+    }
+
+    @Test
+    public void waitsForTheNextToken() {
+        TokenBucket bucket = new TokenBucket(20, 1);
+
+        long start = System.nanoTime();
+        assertTrue(bucket.acquire());
+        assertTrue(bucket.acquire());
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(1, bucket.getThrottledPermits());
+        assertTrue("waited " + elapsedMillis + "ms", elapsedMillis >= 40);
+        assertTrue(bucket.getThrottleWaitMillis() >= 40 && bucket.getThrottleWaitMillis() <= 50);
+    }
+
+    @Test
+    public void refillsWhileIdle() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(50, 1);
+
+        assertTrue(bucket.acquire());
+        Thread.sleep(60);
+        assertTrue(bucket.acquire());
+        assertEquals(0, bucket.getThrottledPermits());
+    }
+
+    @Test
+    public void refundGivesTheTokenBack() {
+        TokenBucket bucket = new TokenBucket(1, 1);
+
+        assertTrue(bucket.acquire());
+        bucket.refund();
+        assertEquals(0, bucket.getAcquiredPermits());
+        assertTrue(bucket.acquire());
+        assertEquals(1, bucket.getAcquiredPermits());
+        assertEquals(0, bucket.getThrottledPermits());
+    }
+
+    @Test
+    public void refundDoesNotExceedTheBurst() {
+        TokenBucket bucket = new TokenBucket(20, 2);
+
+        bucket.refund();
+        bucket.refund();
+        assertTrue(bucket.acquire());
+        assertTrue(bucket.acquire());
+        assertEquals(0, bucket.getThrottledPermits());
+        assertTrue(bucket.acquire());
+        assertEquals(1, bucket.getThrottledPermits());
+    }
+
+    @Test
+    public void setRateClampsTheTokensToTheNewBurst() {
+        TokenBucket bucket = new TokenBucket(20, 5);
+
+        bucket.setRate(20, 2);
+        assertTrue(bucket.acquire());
+        assertTrue(bucket.acquire());
+        assertEquals(0, bucket.getThrottledPermits());
+        assertTrue(bucket.acquire());
+        assertEquals(1, bucket.getThrottledPermits());
+        assertEquals(20, bucket.getPermitsPerSecond(), 0);
+        assertEquals(2, bucket.getBurst(), 0);
+    }
+
+    @Test
+    public void burstIsAtLeastOne() {
+        assertEquals(1, new TokenBucket(1, 0).getBurst(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveRate() {
+        new TokenBucket(0, 1);
+    }
+
+    @Test
+    public void interruptedAcquireRefunds() {
+        TokenBucket bucket = new TokenBucket(1, 1);
+        assertTrue(bucket.acquire());
+
+        Thread.currentThread().interrupt();
+        try {
+            assertFalse(bucket.acquire());
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+        assertEquals(1, bucket.getAcquiredPermits());
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.kinglcc.spring.jms.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * IdempotentFilterTest
+ * <pre>The streaming lookup of the idempotent key path in the JSON body.</pre>
+ *
+ * @author liaochaochao
+ * @since 2016年3月25日 下午3:26:42
+ */
+public class IdempotentFilterTest {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    @Test
+    public void topLevelField() throws IOException {
+        assertEquals("42", find("{\"id\":42,\"name\":\"a\"}", "id"));
+        assertEquals("a", find("{\"id\":42,\"name\":\"a\"}", "name"));
+    }
+
+    @Test
+    public void nestedField() throws IOException {
+        assertEquals("o-1", find("{\"type\":\"t\",\"order\":{\"amount\":3,\"id\":\"o-1\"}}", "order", "id"));
+    }
+
+    @Test
+    public void skipsTheSiblingObjectsAndArrays() throws IOException {
+        String json = "{\"items\":[{\"id\":1},{\"id\":2}],\"meta\":{\"id\":\"m\",\"tags\":[\"id\"]},\"id\":\"k\"}";
+
+        assertEquals("k", find(json, "id"));
+    }
+
+    @Test
+    public void doesNotMatchTheNestedFieldOfTheSameName() throws IOException {
+        assertNull(find("{\"order\":{\"id\":\"o-1\"}}", "id"));
+        assertNull(find("{\"id\":{\"order\":\"o-1\"}}", "id", "order", "id"));
+    }
+
+    @Test
+    public void nonScalarOrNullIsNotAKey() throws IOException {
+        assertNull(find("{\"id\":{\"value\":1}}", "id"));
+        assertNull(find("{\"id\":[1,2]}", "id"));
+        assertNull(find("{\"id\":null}", "id"));
+        assertEquals("true", find("{\"id\":true}", "id"));
+    }
+
+    @Test
+    public void missingPath() throws IOException {
+        assertNull(find("{\"name\":\"a\"}", "id"));
+        assertNull(find("{\"order\":\"o-1\"}", "order", "id"));
+        assertNull(find("{}", "id"));
+    }
+
+    @Test
+    public void notAnObject() throws IOException {
+        assertNull(find("[{\"id\":1}]", "id"));
+        assertNull(find("\"id\"", "id"));
+    }
+
+    @Test
+    public void stopsAtTheField() throws IOException {
+        // the malformed tail after the field is never parsed
+        assertEquals("1", find("{\"id\":1,\"rest\":[", "id"));
+    }
+
+    @Test
+    public void closesTheParser() throws IOException {
+        JsonParser parser = JSON_FACTORY.createParser("{\"id\":1,\"name\":\"a\"}");
+
+        IdempotentFilter.findField(parser, new String[] { "id" });
+        assertTrue(parser.isClosed());
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void malformedBody() throws IOException {
+        find("{\"name\":oops}", "id");
+    }
+
+    private static String find(String json, String... path) throws IOException {
+        return IdempotentFilter.findField(JSON_FACTORY.createParser(json), path);
+    }
+
+}